@@ -0,0 +1,101 @@
+// package com.synthetic.s1;
+
+// import android.app.Unpacker_dcl_loaderlication;
+// import android.content.Context;
+
+/* loaded from: classes.dex */
+public class Unpacker_dcl_loader extends Unpacker_dcl_loaderlication {
+    
+    public static void main(String[] args) {
+        //super.attachBaseContext(context); // BadUnboxing: Remove superclass reference
+//         Loader.method_load_1(new Context()); // BadUnboxing: Line contains reflection and was commented out
+    }
+
+    @Override // android.app.Unpacker_dcl_loaderlication
+    public static void onCreate() {
+        //super.onCreate(); // BadUnboxing: Remove superclass reference
+        new C0().method_link_4();
+    }
+}
+
+package com.synthetic.s1;
+
+// import android.content.Context;
+// import dalvik.system.DexClassLoader;
+import java.lang.reflect.Method;
+
+class Application {
+    // Dummy Application class implementation
+}
+
+
+class Context {
+    // Dummy Context class implementation
+}
+
+
+/* loaded from: classes.dex */
+public class Loader {
+// BadUnboxing     public static Object method_load_1(Context arg_context_2) {
+// BadUnboxing         String var_absolutePath_3 = arg_context_2.getCacheDir().getAbsolutePath();
+// BadUnboxing System.out.println(var_absolutePath_3 + "/payload.dex"); // BadUnboxing: Replacing DexClassLoader call with directory print
+// BadUnboxing         Method var_method_5 = var_dexClassLoader_4.loadClass("com.synthetic.s1.payload.Entry").getMethod("start", new Class[0]);
+// BadUnboxing         return var_method_5.invoke(null, new Object[0]);
+// BadUnboxing     }
+// BadUnboxing: Method contains reflection in return statement and was commented out
+
+}
+
+package com.synthetic.s1;
+
+/* loaded from: classes.dex */
+public class C0 {
+    private static int field_count_5;
+    private static String field_label_6;
+
+    public static int method_compute_2(int arg_i_8) {
+        int var_i2_9 = (field_count_5 + arg_i_8) * 7;
+        field_count_5 = var_i2_9;
+        if (var_i2_9 > 0) {
+            return var_i2_9;
+        }
+        return -var_i2_9;
+    }
+
+    public static String method_describe_3(String arg_str_6) {
+        String var_str2_7 = arg_str_6 + field_label_6;
+        field_label_6 = var_str2_7;
+        return var_str2_7;
+    }
+
+    public static String method_link_4() {
+        return String.valueOf(new C1().method_compute_7(42));
+    }
+}
+
+package com.synthetic.s1;
+
+/* loaded from: classes.dex */
+public class C1 {
+    private static int field_count_a;
+    private static String field_label_b;
+
+    public static int method_compute_7(int arg_i_c) {
+        int var_i2_d = (field_count_a + arg_i_c) * 7;
+        field_count_a = var_i2_d;
+        if (var_i2_d > 0) {
+            return var_i2_d;
+        }
+        return -var_i2_d;
+    }
+
+    public static String method_describe_8(String arg_str_a) {
+        String var_str2_b = arg_str_a + field_label_b;
+        field_label_b = var_str2_b;
+        return var_str2_b;
+    }
+
+    public static String method_link_9() {
+        return "com.synthetic.s1.C1";
+    }
+}
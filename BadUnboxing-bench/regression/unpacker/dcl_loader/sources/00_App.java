@@ -0,0 +1,19 @@
+package com.synthetic.s1;
+
+import android.app.Application;
+import android.content.Context;
+
+/* loaded from: classes.dex */
+public class App extends Application {
+    @Override // android.content.ContextWrapper
+    protected void attachBaseContext(Context context) {
+        super.attachBaseContext(context);
+        Loader.method_load_1(context);
+    }
+
+    @Override // android.app.Application
+    public void onCreate() {
+        super.onCreate();
+        new C0().method_link_4();
+    }
+}
@@ -0,0 +1,15 @@
+package com.synthetic.s1;
+
+import android.content.Context;
+import dalvik.system.DexClassLoader;
+import java.lang.reflect.Method;
+
+/* loaded from: classes.dex */
+public class Loader {
+    public static Object method_load_1(Context context) {
+        String absolutePath = context.getCacheDir().getAbsolutePath();
+        DexClassLoader dexClassLoader = new DexClassLoader(absolutePath + "/payload.dex", absolutePath, null, context.getClassLoader());
+        Method method = dexClassLoader.loadClass("com.synthetic.s1.payload.Entry").getMethod("start", new Class[0]);
+        return method.invoke(null, new Object[0]);
+    }
+}
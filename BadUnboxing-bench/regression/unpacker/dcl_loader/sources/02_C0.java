@@ -0,0 +1,26 @@
+package com.synthetic.s1;
+
+/* loaded from: classes.dex */
+public class C0 {
+    private int field_count_5;
+    private String field_label_6;
+
+    public int method_compute_2(int i) {
+        int i2 = (this.field_count_5 + i) * 7;
+        this.field_count_5 = i2;
+        if (i2 > 0) {
+            return i2;
+        }
+        return -i2;
+    }
+
+    public String method_describe_3(String str) {
+        String str2 = str + this.field_label_6;
+        this.field_label_6 = str2;
+        return str2;
+    }
+
+    public String method_link_4() {
+        return String.valueOf(new C1().method_compute_7(42));
+    }
+}
@@ -0,0 +1,26 @@
+package com.synthetic.s1;
+
+/* loaded from: classes.dex */
+public class C1 {
+    private int field_count_a;
+    private String field_label_b;
+
+    public int method_compute_7(int i) {
+        int i2 = (this.field_count_a + i) * 7;
+        this.field_count_a = i2;
+        if (i2 > 0) {
+            return i2;
+        }
+        return -i2;
+    }
+
+    public String method_describe_8(String str) {
+        String str2 = str + this.field_label_b;
+        this.field_label_b = str2;
+        return str2;
+    }
+
+    public String method_link_9() {
+        return "com.synthetic.s1.C1";
+    }
+}
@@ -0,0 +1,103 @@
+// package com.synthetic.s2;
+
+// import android.app.Unpacker_linked_onllication;
+
+class Application {
+    // Dummy Application class implementation
+}
+
+
+class Context {
+    // Dummy Context class implementation
+}
+
+
+/* loaded from: classes.dex */
+public class Unpacker_linked_onl extends Unpacker_linked_onllication {
+    @Override // android.app.Unpacker_linked_onllication
+    public static void onCreate() {
+        //super.onCreate(); // BadUnboxing: Remove superclass reference
+        new C0().method_link_3();
+    }
+}
+
+package com.synthetic.s2;
+
+/* loaded from: classes.dex */
+public class C0 {
+    private static int field_count_4;
+    private static String field_label_5;
+
+    public static int method_compute_1(int arg_i_3) {
+        int var_i2_4 = (field_count_4 + arg_i_3) * 7;
+        field_count_4 = var_i2_4;
+        if (var_i2_4 > 0) {
+            return var_i2_4;
+        }
+        return -var_i2_4;
+    }
+
+    public static String method_describe_2(String arg_str_1) {
+        String var_str2_2 = arg_str_1 + field_label_5;
+        field_label_5 = var_str2_2;
+        return var_str2_2;
+    }
+
+    public static String method_link_3() {
+        return String.valueOf(new C1().method_compute_6(42));
+    }
+}
+
+package com.synthetic.s2;
+
+/* loaded from: classes.dex */
+public class C1 {
+    private static int field_count_9;
+    private static String field_label_a;
+
+    public static int method_compute_6(int arg_i_7) {
+        int var_i2_8 = (field_count_9 + arg_i_7) * 7;
+        field_count_9 = var_i2_8;
+        if (var_i2_8 > 0) {
+            return var_i2_8;
+        }
+        return -var_i2_8;
+    }
+
+    public static String method_describe_7(String arg_str_5) {
+        String var_str2_6 = arg_str_5 + field_label_a;
+        field_label_a = var_str2_6;
+        return var_str2_6;
+    }
+
+    public static String method_link_8() {
+        return String.valueOf(new C2().method_compute_b(42));
+    }
+}
+
+package com.synthetic.s2;
+
+/* loaded from: classes.dex */
+public class C2 {
+    private static int field_count_e;
+    private static String field_label_f;
+
+    public static int method_compute_b(int arg_i_b) {
+        int var_i2_c = (field_count_e + arg_i_b) * 7;
+        field_count_e = var_i2_c;
+        if (var_i2_c > 0) {
+            return var_i2_c;
+        }
+        return -var_i2_c;
+    }
+
+    public static String method_describe_c(String arg_str_9) {
+        String var_str2_a = arg_str_9 + field_label_f;
+        field_label_f = var_str2_a;
+        return var_str2_a;
+    }
+
+    public static String method_link_d() {
+        return "com.synthetic.s2.C2";
+    }
+}
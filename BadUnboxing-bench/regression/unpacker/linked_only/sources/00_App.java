@@ -0,0 +1,12 @@
+package com.synthetic.s2;
+
+import android.app.Application;
+
+/* loaded from: classes.dex */
+public class App extends Application {
+    @Override // android.app.Application
+    public void onCreate() {
+        super.onCreate();
+        new C0().method_link_3();
+    }
+}
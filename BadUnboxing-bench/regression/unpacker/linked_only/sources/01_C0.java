@@ -0,0 +1,26 @@
+package com.synthetic.s2;
+
+/* loaded from: classes.dex */
+public class C0 {
+    private int field_count_4;
+    private String field_label_5;
+
+    public int method_compute_1(int i) {
+        int i2 = (this.field_count_4 + i) * 7;
+        this.field_count_4 = i2;
+        if (i2 > 0) {
+            return i2;
+        }
+        return -i2;
+    }
+
+    public String method_describe_2(String str) {
+        String str2 = str + this.field_label_5;
+        this.field_label_5 = str2;
+        return str2;
+    }
+
+    public String method_link_3() {
+        return String.valueOf(new C1().method_compute_6(42));
+    }
+}
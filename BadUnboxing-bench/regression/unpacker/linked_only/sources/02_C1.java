@@ -0,0 +1,26 @@
+package com.synthetic.s2;
+
+/* loaded from: classes.dex */
+public class C1 {
+    private int field_count_9;
+    private String field_label_a;
+
+    public int method_compute_6(int i) {
+        int i2 = (this.field_count_9 + i) * 7;
+        this.field_count_9 = i2;
+        if (i2 > 0) {
+            return i2;
+        }
+        return -i2;
+    }
+
+    public String method_describe_7(String str) {
+        String str2 = str + this.field_label_a;
+        this.field_label_a = str2;
+        return str2;
+    }
+
+    public String method_link_8() {
+        return String.valueOf(new C2().method_compute_b(42));
+    }
+}
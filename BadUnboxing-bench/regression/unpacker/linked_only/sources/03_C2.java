@@ -0,0 +1,26 @@
+package com.synthetic.s2;
+
+/* loaded from: classes.dex */
+public class C2 {
+    private int field_count_e;
+    private String field_label_f;
+
+    public int method_compute_b(int i) {
+        int i2 = (this.field_count_e + i) * 7;
+        this.field_count_e = i2;
+        if (i2 > 0) {
+            return i2;
+        }
+        return -i2;
+    }
+
+    public String method_describe_c(String str) {
+        String str2 = str + this.field_label_f;
+        this.field_label_f = str2;
+        return str2;
+    }
+
+    public String method_link_d() {
+        return "com.synthetic.s2.C2";
+    }
+}
@@ -0,0 +1,56 @@
+// package com.synthetic.s3;
+
+// import android.app.Unpacker_reflectionlication;
+// import android.content.Context;
+
+/* loaded from: classes.dex */
+public class Unpacker_reflection extends Unpacker_reflectionlication {
+    
+    public static void main(String[] args) {
+        //super.attachBaseContext(context); // BadUnboxing: Remove superclass reference
+        Hooks.method_install_1(new Context());
+    }
+}
+
+package com.synthetic.s3;
+
+// import android.content.Context;
+import java.lang.reflect.Field;
+
+class Application {
+    // Dummy Application class implementation
+}
+
+
+class Context {
+    // Dummy Context class implementation
+}
+
+
+/* loaded from: classes.dex */
+public class Hooks {
+    private static Object field_target_5;
+
+    public static void method_install_1(Context arg_context_5) {
+//         Object var_obj_6 = method_lookup_2(arg_context_5); // BadUnboxing: Line contains reflection and was commented out
+//         field_target_5 = var_obj_6; // BadUnboxing: Line contains reflection and was commented out
+        Runnable var_runnable_7 = new Runnable() {
+            public static void method_run_4() {
+                Hooks.method_report_3("installed");
+            }
+        };
+        var_runnable_7.run();
+    }
+
+// BadUnboxing     public static Object method_lookup_2(Context arg_context_3) throws Exception {
+// BadUnboxing //         Field var_declaredField_4 = arg_context_3.getClass().getDeclaredField("mBase"); // BadUnboxing: Line contains reflection and was commented out
+// BadUnboxing //         var_declaredField_4.setAccessible(true); // BadUnboxing: Line contains reflection and was commented out
+// BadUnboxing         return var_declaredField_4.get(arg_context_3);
+// BadUnboxing     }
+// BadUnboxing: Method contains reflection in return statement and was commented out
+
+
+    public static void method_report_3(String arg_str_2) {
+        System.out.println(arg_str_2);
+    }
+}
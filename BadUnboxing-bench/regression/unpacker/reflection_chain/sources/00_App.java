@@ -0,0 +1,13 @@
+package com.synthetic.s3;
+
+import android.app.Application;
+import android.content.Context;
+
+/* loaded from: classes.dex */
+public class App extends Application {
+    @Override // android.content.ContextWrapper
+    protected void attachBaseContext(Context context) {
+        super.attachBaseContext(context);
+        Hooks.method_install_1(context);
+    }
+}
@@ -0,0 +1,30 @@
+package com.synthetic.s3;
+
+import android.content.Context;
+import java.lang.reflect.Field;
+
+/* loaded from: classes.dex */
+public class Hooks {
+    private static Object field_target_5;
+
+    public static void method_install_1(Context context) {
+        Object obj = method_lookup_2(context);
+        field_target_5 = obj;
+        Runnable runnable = new Runnable() {
+            public void method_run_4() {
+                Hooks.method_report_3("installed");
+            }
+        };
+        runnable.run();
+    }
+
+    public static Object method_lookup_2(Context context) throws Exception {
+        Field declaredField = context.getClass().getDeclaredField("mBase");
+        declaredField.setAccessible(true);
+        return declaredField.get(context);
+    }
+
+    public static void method_report_3(String str) {
+        System.out.println(str);
+    }
+}
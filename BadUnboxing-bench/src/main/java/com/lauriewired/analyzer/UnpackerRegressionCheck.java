@@ -0,0 +1,139 @@
+package com.lauriewired.analyzer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Regression check of the generated unpacker code. Every case directory holds the decompiled
+ * classes jadx produces for a synthetic APK (see com.lauriewired.bench.SyntheticApk) after
+ * methods and fields were renamed, and the unpacker BadUnboxing generated from them:
+ *
+ *      <apk name>/sources/NN_<class>.java  application subclass first, then the classes it references
+ *      <apk name>/expected.java            UnpackerGenerator output
+ *
+ * All rewriting after decompilation is text processing, so the check needs no APK. It lives in
+ * the analyzer package to reach UnpackerGenerator.generateUnpackerJava. --update rewrites
+ * expected.java after an intended change of the output. Exits with status 1 on any difference.
+ */
+public class UnpackerRegressionCheck {
+    private static final Pattern SOURCE_FILE = Pattern.compile("\\d+_(\\w+)\\.java");
+    private static final Pattern PACKAGE = Pattern.compile("(?m)^package\\s+([\\w.]+);");
+    private static final String EXPECTED_FILE_NAME = "expected.java";
+
+    private static void printUsageAndExit() {
+        System.err.println("usage: java -cp benchmarks.jar com.lauriewired.analyzer.UnpackerRegressionCheck [--update] /path/to/cases");
+        System.exit(1);
+    }
+
+    static String generate(Path caseDir, SimpleLogger logger) throws IOException {
+        List<Path> sourceFiles = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(caseDir.resolve("sources"), "*.java")) {
+            for (Path file : files) {
+                sourceFiles.add(file);
+            }
+        }
+        Collections.sort(sourceFiles);
+        if (sourceFiles.isEmpty()) {
+            throw new IOException("No sources in " + caseDir);
+        }
+
+        List<Supplier<String>> classSources = new ArrayList<>();
+        for (Path file : sourceFiles) {
+            String code = Files.readString(file, StandardCharsets.UTF_8);
+            classSources.add(() -> code);
+        }
+        Matcher sourceName = SOURCE_FILE.matcher(sourceFiles.get(0).getFileName().toString());
+        Matcher packageName = PACKAGE.matcher(classSources.get(0).get());
+        if (!sourceName.matches() || !packageName.find()) {
+            throw new IOException("Can't tell the application subclass of " + caseDir);
+        }
+
+        String apkFileName = caseDir.getFileName() + ".apk";
+        AnalysisResult result = new AnalysisResult(packageName.group(1));
+        try (CancellationToken token = new CancellationToken(new AnalysisOptions().timeoutMillis)) {
+            UnpackerGenerator generator = new UnpackerGenerator(logger, result, new CodeCache(0), token, null);
+            return generator.generateUnpackerJava(sourceName.group(1), classSources,
+                    UnpackerGenerator.unpackerClassName(apkFileName), packageName.group(1)).toString();
+        }
+    }
+
+    // Line number and both lines of the first difference
+    private static String firstDifference(String expected, String actual) {
+        String[] expectedLines = expected.split("\n", -1);
+        String[] actualLines = actual.split("\n", -1);
+        for (int i = 0; i < Math.max(expectedLines.length, actualLines.length); i++) {
+            String wanted = i < expectedLines.length ? expectedLines[i] : "<end of file>";
+            String got = i < actualLines.length ? actualLines[i] : "<end of file>";
+            if (!wanted.equals(got)) {
+                return "line " + (i + 1) + "\n  expected: " + wanted + "\n  actual:   " + got;
+            }
+        }
+        return "no difference";
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean update = false;
+        List<String> positionalArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--update")) {
+                update = true;
+            } else if (arg.startsWith("--")) {
+                System.err.println("invalid option: " + arg);
+                printUsageAndExit();
+            } else {
+                positionalArgs.add(arg);
+            }
+        }
+        if (positionalArgs.size() != 1) {
+            printUsageAndExit();
+        }
+
+        List<Path> caseDirs = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(Path.of(positionalArgs.get(0)), Files::isDirectory)) {
+            for (Path dir : dirs) {
+                caseDirs.add(dir);
+            }
+        }
+        Collections.sort(caseDirs);
+
+        int failed = 0;
+        SimpleLogger logger = new SimpleLogger(Files.createTempFile("unpacker-regression", ".log").toString());
+        try {
+            for (Path caseDir : caseDirs) {
+                String actual = generate(caseDir, logger);
+                Path expectedFile = caseDir.resolve(EXPECTED_FILE_NAME);
+                if (update) {
+                    Files.writeString(expectedFile, actual, StandardCharsets.UTF_8);
+                    System.out.println("Updated " + expectedFile);
+                    continue;
+                }
+                String expected = Files.isRegularFile(expectedFile)
+                        ? Files.readString(expectedFile, StandardCharsets.UTF_8)
+                        : "";
+                if (!expected.equals(actual)) {
+                    failed++;
+                    System.err.println(caseDir.getFileName() + ": generated unpacker differs from "
+                            + EXPECTED_FILE_NAME + " at " + firstDifference(expected, actual));
+                }
+            }
+        } finally {
+            logger.close();
+        }
+
+        if (!update) {
+            System.out.println((caseDirs.size() - failed) + " of " + caseDirs.size() + " unpacker cases match");
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.lauriewired.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lauriewired.analyzer.AnalysisOptions;
+import com.lauriewired.analyzer.AnalysisResult;
+import com.lauriewired.analyzer.Analyzer;
+
+// One complete analysis per invocation: load, detection, unpacker generation, result file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class AnalyzerBenchmark {
+    @Param({ "small", "medium", "large" })
+    public String input;
+
+    @Param({ "SOURCE", "BYTECODE", "LAZY" })
+    public String mode;
+
+    private String apkPath;
+    private String outputRootPath;
+    private AnalysisOptions options;
+
+    @Setup
+    public void setup() throws IOException {
+        apkPath = BenchmarkInputs.get(input).toString();
+        Path outputRoot = Files.createTempDirectory("analyzer-bench");
+        Files.createDirectories(outputRoot.resolve("logs"));
+        Files.createDirectories(outputRoot.resolve("results"));
+        outputRootPath = outputRoot.toString();
+        options = new AnalysisOptions();
+        options.detectionMode = AnalysisOptions.DetectionMode.valueOf(mode);
+    }
+
+    @Benchmark
+    public AnalysisResult analyzeApk() {
+        Analyzer analyzer = new Analyzer(apkPath, outputRootPath, options);
+        analyzer.run();
+        return analyzer.getResult();
+    }
+}
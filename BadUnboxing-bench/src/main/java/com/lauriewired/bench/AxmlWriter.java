@@ -0,0 +1,172 @@
+package com.lauriewired.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Writes the compiled (binary) XML format that AndroidManifest.xml has inside an APK, which is
+ * what jadx decodes. Only string attributes are supported, android:name is the only attribute
+ * that gets a resource id, which is all a synthetic manifest needs.
+ */
+public class AxmlWriter {
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+    private static final String ANDROID_PREFIX = "android";
+    private static final int ATTR_NAME_RESOURCE_ID = 0x01010003;
+
+    private static final short RES_STRING_POOL_TYPE = 0x0001;
+    private static final short RES_XML_TYPE = 0x0003;
+    private static final short RES_XML_START_NAMESPACE_TYPE = 0x0100;
+    private static final short RES_XML_END_NAMESPACE_TYPE = 0x0101;
+    private static final short RES_XML_START_ELEMENT_TYPE = 0x0102;
+    private static final short RES_XML_END_ELEMENT_TYPE = 0x0103;
+    private static final short RES_XML_RESOURCE_MAP_TYPE = 0x0180;
+    private static final byte TYPE_STRING = 0x03;
+    private static final int NO_INDEX = -1;
+
+    public static class Element {
+        final String name;
+        // Attribute name to value, android: attributes are stored with their prefix
+        final Map<String, String> attributes = new LinkedHashMap<>();
+        final List<Element> children = new ArrayList<>();
+
+        public Element(String name) {
+            this.name = name;
+        }
+
+        public Element attr(String name, String value) {
+            attributes.put(name, value);
+            return this;
+        }
+
+        public Element androidAttr(String name, String value) {
+            attributes.put(ANDROID_PREFIX + ":" + name, value);
+            return this;
+        }
+
+        public Element child(Element child) {
+            children.add(child);
+            return this;
+        }
+    }
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<ByteBuffer> nodes = new ArrayList<>();
+    private int lineNumber = 1;
+
+    private AxmlWriter() {
+        // The resource map covers a prefix of the string pool, so attribute names with an id go first
+        intern("name");
+        intern(ANDROID_PREFIX);
+        intern(ANDROID_NS);
+    }
+
+    public static byte[] write(Element root) {
+        AxmlWriter writer = new AxmlWriter();
+        writer.namespace(RES_XML_START_NAMESPACE_TYPE);
+        writer.element(root);
+        writer.namespace(RES_XML_END_NAMESPACE_TYPE);
+        return writer.toBytes();
+    }
+
+    private int intern(String s) {
+        return stringIndex.computeIfAbsent(s, k -> {
+            strings.add(k);
+            return strings.size() - 1;
+        });
+    }
+
+    private void namespace(short type) {
+        ByteBuffer node = allocate(24);
+        node.putShort(type).putShort((short) 16).putInt(24);
+        node.putInt(lineNumber).putInt(NO_INDEX);
+        node.putInt(intern(ANDROID_PREFIX)).putInt(intern(ANDROID_NS));
+        nodes.add(node);
+    }
+
+    private void element(Element element) {
+        int size = 36 + 20 * element.attributes.size();
+        ByteBuffer start = allocate(size);
+        start.putShort(RES_XML_START_ELEMENT_TYPE).putShort((short) 16).putInt(size);
+        start.putInt(lineNumber++).putInt(NO_INDEX);
+        start.putInt(NO_INDEX).putInt(intern(element.name));
+        start.putShort((short) 20).putShort((short) 20).putShort((short) element.attributes.size());
+        start.putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        for (Map.Entry<String, String> attr : element.attributes.entrySet()) {
+            String name = attr.getKey();
+            boolean android = name.startsWith(ANDROID_PREFIX + ":");
+            int value = intern(attr.getValue());
+            start.putInt(android ? intern(ANDROID_NS) : NO_INDEX);
+            start.putInt(intern(android ? name.substring(ANDROID_PREFIX.length() + 1) : name));
+            start.putInt(value);
+            start.putShort((short) 8).put((byte) 0).put(TYPE_STRING).putInt(value);
+        }
+        nodes.add(start);
+
+        for (Element child : element.children) {
+            element(child);
+        }
+
+        ByteBuffer end = allocate(24);
+        end.putShort(RES_XML_END_ELEMENT_TYPE).putShort((short) 16).putInt(24);
+        end.putInt(lineNumber++).putInt(NO_INDEX);
+        end.putInt(NO_INDEX).putInt(intern(element.name));
+        nodes.add(end);
+    }
+
+    private byte[] toBytes() {
+        ByteBuffer stringPool = stringPool();
+        ByteBuffer resourceMap = allocate(12);
+        resourceMap.putShort(RES_XML_RESOURCE_MAP_TYPE).putShort((short) 8).putInt(12);
+        resourceMap.putInt(ATTR_NAME_RESOURCE_ID);
+
+        int size = 8 + stringPool.capacity() + resourceMap.capacity();
+        for (ByteBuffer node : nodes) {
+            size += node.capacity();
+        }
+        ByteBuffer out = allocate(size);
+        out.putShort(RES_XML_TYPE).putShort((short) 8).putInt(size);
+        out.put(stringPool.array()).put(resourceMap.array());
+        for (ByteBuffer node : nodes) {
+            out.put(node.array());
+        }
+        return out.array();
+    }
+
+    // UTF-16 string pool without styles
+    private ByteBuffer stringPool() {
+        int headerSize = 28;
+        int stringsStart = headerSize + 4 * strings.size();
+        int dataSize = 0;
+        for (String s : strings) {
+            dataSize += 2 + 2 * s.length() + 2;
+        }
+        int size = (stringsStart + dataSize + 3) & ~3;
+
+        ByteBuffer pool = allocate(size);
+        pool.putShort(RES_STRING_POOL_TYPE).putShort((short) headerSize).putInt(size);
+        pool.putInt(strings.size()).putInt(0).putInt(0).putInt(stringsStart).putInt(0);
+        int offset = 0;
+        for (String s : strings) {
+            pool.putInt(offset);
+            offset += 2 + 2 * s.length() + 2;
+        }
+        for (String s : strings) {
+            pool.putShort((short) s.length());
+            for (int i = 0; i < s.length(); i++) {
+                pool.putChar(s.charAt(i));
+            }
+            pool.putShort((short) 0);
+        }
+        return pool;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,63 @@
+package com.lauriewired.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * The synthetic APKs the benchmarks run on. The build writes them to target/bench-inputs
+ * (see pom.xml); a benchmark started elsewhere generates whatever is missing on first use.
+ *
+ *      small  -   20 app +   20 library classes
+ *      medium -  200 app +  200 library classes
+ *      large  - 1000 app + 1000 library classes
+ */
+public class BenchmarkInputs {
+    public static final String INPUTS_PROPERTY = "bench.inputs";
+
+    public static SyntheticApk spec(String name) {
+        SyntheticApk apk = new SyntheticApk();
+        switch (name) {
+            case "small":
+                apk.appClasses = 20;
+                apk.libraryClasses = 20;
+                apk.linkedClasses = 5;
+                apk.reflectiveClasses = 2;
+                break;
+            case "medium":
+                apk.appClasses = 200;
+                apk.libraryClasses = 200;
+                apk.linkedClasses = 20;
+                apk.reflectiveClasses = 10;
+                break;
+            case "large":
+                apk.appClasses = 1000;
+                apk.libraryClasses = 1000;
+                apk.linkedClasses = 50;
+                apk.reflectiveClasses = 50;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown benchmark input: " + name);
+        }
+        return apk;
+    }
+
+    public static synchronized Path get(String name) throws IOException {
+        Path apk = Path.of(System.getProperty(INPUTS_PROPERTY, "target/bench-inputs"), name + ".apk");
+        if (!Files.isRegularFile(apk)) {
+            spec(name).write(apk);
+        }
+        return apk.toAbsolutePath();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args.length > 0 ? args[0] : "target/bench-inputs");
+        for (String name : new String[] { "small", "medium", "large" }) {
+            Path apk = dir.resolve(name + ".apk");
+            if (!Files.isRegularFile(apk)) {
+                spec(name).write(apk);
+                System.out.println("Wrote " + apk);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.lauriewired.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.lauriewired.analyzer.CodePatterns;
+
+/*
+ * The per-line checks of the unpacker rewriters, once compiling each regex where it is used (as
+ * String.matches, String.replaceAll and in-method Pattern.compile did) and once with the shared
+ * patterns of CodePatterns. Run with -prof gc to see the allocation per line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CodePatternsBenchmark {
+    // Number of lines of decompiled code, cycling through the templates below
+    @Param({ "1000", "10000" })
+    public int lines;
+
+    private static final String[] TEMPLATES = {
+        "import android.content.Context;",
+        "import java.lang.reflect.Method;",
+        "    private static String field_a_1;",
+        "    int field_b_2 = 3;",
+        "    public static String method_load_3(Context arg_context_4) throws Exception {",
+        "        Class<?> var_cls_5 = Class.forName(\"com.example.Payload\");",
+        "        Method var_m_6 = var_cls_5.getMethod(\"run\", new Class[0]);",
+        "        String var_name_7 = arg_context_4.getPackageName();",
+        "        File var_dir_8 = arg_context_4.getDir(\"dex\", 0);",
+        "        this.field_b_2 = var_name_7.length();",
+        "        return (String) var_m_6.invoke(null, new Object[0]);",
+        "    }",
+    };
+
+    private List<String> code;
+
+    @Setup
+    public void setup() {
+        code = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            code.add(TEMPLATES[i % TEMPLATES.length]);
+        }
+    }
+
+    @Benchmark
+    public void compiledPerUse(Blackhole blackhole) {
+        Pattern reflectiveKeyword = CodePatterns.surroundedIdentifier("getMethod");
+        for (String line : code) {
+            blackhole.consume(line.trim().matches(CodePatterns.METHOD_START.pattern()));
+            blackhole.consume(Pattern.compile(CodePatterns.IMPORT_STATEMENT.pattern()).matcher(line).find());
+            blackhole.consume(Pattern.compile(CodePatterns.FIELD_DECLARATION.pattern()).matcher(line).find());
+            blackhole.consume(line.replaceAll(CodePatterns.THIS_ACCESS.pattern(), ""));
+            blackhole.consume(line.matches(".*" + reflectiveKeyword.pattern() + ".*"));
+            blackhole.consume(line.replaceFirst(CodePatterns.LEADING_WHITESPACE.pattern(), ""));
+        }
+    }
+
+    @Benchmark
+    public void registry(Blackhole blackhole) {
+        Pattern reflectiveKeyword = CodePatterns.surroundedIdentifier("getMethod");
+        for (String line : code) {
+            blackhole.consume(CodePatterns.METHOD_START.matcher(line.trim()).matches());
+            blackhole.consume(CodePatterns.IMPORT_STATEMENT.matcher(line).find());
+            blackhole.consume(CodePatterns.FIELD_DECLARATION.matcher(line).find());
+            blackhole.consume(CodePatterns.THIS_ACCESS.matcher(line).replaceAll(""));
+            blackhole.consume(reflectiveKeyword.matcher(line).find());
+            blackhole.consume(CodePatterns.LEADING_WHITESPACE.matcher(line).replaceFirst(""));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.lauriewired.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.lauriewired.analyzer.AnalysisOptions;
+import com.lauriewired.analyzer.ClassIndex;
+import com.lauriewired.analyzer.CodeCache;
+import com.lauriewired.analyzer.IdentifierRenamer;
+import com.lauriewired.analyzer.JadxUtils;
+import com.lauriewired.analyzer.NameAllocator;
+import com.lauriewired.analyzer.SimpleLogger;
+
+import jadx.api.JadxDecompiler;
+import jadx.api.JavaClass;
+
+// Regex renaming of arguments and locals in the classes the unpacker is generated from
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IdentifierRenamerBenchmark {
+    @Param({ "small", "medium" })
+    public String input;
+
+    private SimpleLogger logger;
+    private JadxDecompiler jadx;
+    private final List<JavaClass> classes = new ArrayList<>();
+    private CodeCache codeCache;
+
+    @Setup
+    public void setup() throws IOException {
+        logger = new SimpleLogger(Files.createTempFile("identifier-renamer", ".log").toString());
+        jadx = new JadxUtils(logger).loadJadx(BenchmarkInputs.get(input).toString());
+        ClassIndex classIndex = ClassIndex.build(jadx);
+
+        // The Application subclass and the chain of classes it calls into
+        SyntheticApk spec = BenchmarkInputs.spec(input);
+        classes.add(classIndex.getClassByName(spec.packageName + ".App"));
+        for (int i = 0; i < spec.linkedClasses; i++) {
+            classes.add(classIndex.getClassByName(spec.packageName + ".C" + i));
+        }
+
+        // Methods and fields are renamed once through jadx before the token pass, as in the generator
+        NameAllocator names = new NameAllocator();
+        for (JavaClass cls : classes) {
+            IdentifierRenamer.renameMethodsAndFields(cls, jadx, names);
+        }
+        codeCache = new CodeCache(new AnalysisOptions().codeCacheBytes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        jadx.close();
+        logger.close();
+    }
+
+    @Benchmark
+    public void renameArgsAndVars(Blackhole blackhole) {
+        NameAllocator names = new NameAllocator();
+        for (JavaClass cls : classes) {
+            blackhole.consume(IdentifierRenamer.renameArgsAndVars(cls, codeCache, names));
+        }
+    }
+}
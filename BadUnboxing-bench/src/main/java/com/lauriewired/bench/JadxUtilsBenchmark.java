@@ -0,0 +1,65 @@
+package com.lauriewired.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lauriewired.analyzer.JadxUtils;
+import com.lauriewired.analyzer.SimpleLogger;
+
+import jadx.api.JadxDecompiler;
+
+// The two halves of the isPacked check: manifest components and classes present in dex
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class JadxUtilsBenchmark {
+    @Param({ "small", "medium", "large" })
+    public String input;
+
+    private SimpleLogger logger;
+    private JadxUtils jadxUtils;
+    private String apkPath;
+    private JadxDecompiler jadx;
+
+    @Setup
+    public void setup() throws IOException {
+        logger = new SimpleLogger(Files.createTempFile("jadx-utils", ".log").toString());
+        jadxUtils = new JadxUtils(logger);
+        apkPath = BenchmarkInputs.get(input).toString();
+        jadx = jadxUtils.loadJadx(apkPath);
+    }
+
+    @TearDown
+    public void tearDown() {
+        jadx.close();
+        logger.close();
+    }
+
+    @Benchmark
+    public Set<String> getManifestClasses() throws Exception {
+        return jadxUtils.getManifestClasses(apkPath, jadx);
+    }
+
+    @Benchmark
+    public Set<String> getDexClasses() throws Exception {
+        return jadxUtils.getDexClasses(apkPath, jadx);
+    }
+}
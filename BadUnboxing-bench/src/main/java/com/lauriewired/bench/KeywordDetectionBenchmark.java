@@ -0,0 +1,75 @@
+package com.lauriewired.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.lauriewired.analyzer.AnalysisOptions;
+import com.lauriewired.analyzer.AnalysisResult;
+import com.lauriewired.analyzer.CancellationToken;
+import com.lauriewired.analyzer.CodeCache;
+import com.lauriewired.analyzer.JadxUtils;
+import com.lauriewired.analyzer.KeywordDetection;
+import com.lauriewired.analyzer.SimpleLogger;
+
+import jadx.api.JadxDecompiler;
+
+// DCL and reflective package detection over all classes of an already loaded APK
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class KeywordDetectionBenchmark {
+    @Param({ "small", "medium" })
+    public String input;
+
+    @Param({ "SOURCE", "BYTECODE", "LAZY" })
+    public String mode;
+
+    private SimpleLogger logger;
+    private AnalysisOptions options;
+    private JadxDecompiler jadx;
+
+    @Setup
+    public void setup() throws IOException {
+        logger = new SimpleLogger(Files.createTempFile("keyword-detection", ".log").toString());
+        options = new AnalysisOptions();
+        options.detectionMode = AnalysisOptions.DetectionMode.valueOf(mode);
+        jadx = new JadxUtils(logger).loadJadx(BenchmarkInputs.get(input).toString());
+    }
+
+    @TearDown
+    public void tearDown() {
+        jadx.close();
+        logger.close();
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) {
+        // A fresh code cache per invocation, as every real analysis starts with an empty one
+        AnalysisResult result = new AnalysisResult("com.synthetic.app");
+        try (CancellationToken token = new CancellationToken(options.timeoutMillis)) {
+            KeywordDetection detection = new KeywordDetection(logger, result, options,
+                    new CodeCache(options.codeCacheBytes), token);
+            detection.scan(jadx);
+            blackhole.consume(detection.getDclPackages());
+            blackhole.consume(detection.getReflectivePackages());
+        }
+    }
+}
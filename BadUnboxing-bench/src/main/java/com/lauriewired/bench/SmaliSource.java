@@ -0,0 +1,168 @@
+package com.lauriewired.bench;
+
+/*
+ * Smali source of the classes in a synthetic APK. Every method is small but real: field access,
+ * arithmetic, branches and calls into the next class, so jadx has actual code to decompile.
+ */
+class SmaliSource {
+    static String descriptor(String className) {
+        return "L" + className.replace('.', '/') + ";";
+    }
+
+    private static String header(String className, String superClass) {
+        return ".class public " + descriptor(className) + "\n"
+                + ".super " + descriptor(superClass) + "\n\n"
+                + ".method public constructor <init>()V\n"
+                + "    .registers 1\n"
+                + "    invoke-direct {p0}, " + descriptor(superClass) + "-><init>()V\n"
+                + "    return-void\n"
+                + ".end method\n\n";
+    }
+
+    // Plain class; link() instantiates nextClass if there is one
+    static String fillerClass(String className, String nextClass) {
+        String self = descriptor(className);
+        StringBuilder sb = new StringBuilder(header(className, "java.lang.Object"));
+        sb.append(".field private count:I\n\n");
+        sb.append(".field private label:Ljava/lang/String;\n\n");
+
+        sb.append(".method public compute(I)I\n")
+                .append("    .registers 4\n")
+                .append("    iget v0, p0, ").append(self).append("->count:I\n")
+                .append("    add-int v0, v0, p1\n")
+                .append("    mul-int/lit8 v1, v0, 0x7\n")
+                .append("    iput v1, p0, ").append(self).append("->count:I\n")
+                .append("    if-lez v1, :negative\n")
+                .append("    return v1\n")
+                .append("    :negative\n")
+                .append("    neg-int v0, v1\n")
+                .append("    return v0\n")
+                .append(".end method\n\n");
+
+        sb.append(".method public describe(Ljava/lang/String;)Ljava/lang/String;\n")
+                .append("    .registers 4\n")
+                .append("    new-instance v0, Ljava/lang/StringBuilder;\n")
+                .append("    invoke-direct {v0}, Ljava/lang/StringBuilder;-><init>()V\n")
+                .append("    invoke-virtual {v0, p1}, Ljava/lang/StringBuilder;->append(Ljava/lang/String;)Ljava/lang/StringBuilder;\n")
+                .append("    iget-object v1, p0, ").append(self).append("->label:Ljava/lang/String;\n")
+                .append("    invoke-virtual {v0, v1}, Ljava/lang/StringBuilder;->append(Ljava/lang/String;)Ljava/lang/StringBuilder;\n")
+                .append("    invoke-virtual {v0}, Ljava/lang/StringBuilder;->toString()Ljava/lang/String;\n")
+                .append("    move-result-object v0\n")
+                .append("    iput-object v0, p0, ").append(self).append("->label:Ljava/lang/String;\n")
+                .append("    return-object v0\n")
+                .append(".end method\n\n");
+
+        sb.append(".method public link()Ljava/lang/String;\n")
+                .append("    .registers 3\n");
+        if (nextClass != null) {
+            String next = descriptor(nextClass);
+            sb.append("    new-instance v0, ").append(next).append("\n")
+                    .append("    invoke-direct {v0}, ").append(next).append("-><init>()V\n")
+                    .append("    const/16 v1, 0x2a\n")
+                    .append("    invoke-virtual {v0, v1}, ").append(next).append("->compute(I)I\n")
+                    .append("    move-result v1\n")
+                    .append("    invoke-static {v1}, Ljava/lang/String;->valueOf(I)Ljava/lang/String;\n")
+                    .append("    move-result-object v0\n");
+        } else {
+            sb.append("    const-string v0, \"").append(className).append("\"\n");
+        }
+        sb.append("    return-object v0\n")
+                .append(".end method\n");
+        return sb.toString();
+    }
+
+    // Class.forName + newInstance, found by the reflection keywords
+    static String reflectiveClass(String className) {
+        return header(className, "java.lang.Object")
+                + ".method public static lookup(Ljava/lang/String;)Ljava/lang/Object;\n"
+                + "    .registers 3\n"
+                + "    invoke-static {p0}, Ljava/lang/Class;->forName(Ljava/lang/String;)Ljava/lang/Class;\n"
+                + "    move-result-object v0\n"
+                + "    invoke-virtual {v0}, Ljava/lang/Class;->newInstance()Ljava/lang/Object;\n"
+                + "    move-result-object v1\n"
+                + "    return-object v1\n"
+                + ".end method\n";
+    }
+
+    // Loads a payload dex with DexClassLoader and starts it through reflection
+    static String loaderClass(String className, String payloadClass) {
+        return header(className, "java.lang.Object")
+                + ".method public static load(Landroid/content/Context;)Ljava/lang/Object;\n"
+                + "    .registers 8\n"
+                + "    invoke-virtual {p0}, Landroid/content/Context;->getCacheDir()Ljava/io/File;\n"
+                + "    move-result-object v0\n"
+                + "    invoke-virtual {v0}, Ljava/io/File;->getAbsolutePath()Ljava/lang/String;\n"
+                + "    move-result-object v1\n"
+                + "    new-instance v2, Ljava/lang/StringBuilder;\n"
+                + "    invoke-direct {v2}, Ljava/lang/StringBuilder;-><init>()V\n"
+                + "    invoke-virtual {v2, v1}, Ljava/lang/StringBuilder;->append(Ljava/lang/String;)Ljava/lang/StringBuilder;\n"
+                + "    const-string v3, \"/payload.dex\"\n"
+                + "    invoke-virtual {v2, v3}, Ljava/lang/StringBuilder;->append(Ljava/lang/String;)Ljava/lang/StringBuilder;\n"
+                + "    invoke-virtual {v2}, Ljava/lang/StringBuilder;->toString()Ljava/lang/String;\n"
+                + "    move-result-object v2\n"
+                + "    invoke-virtual {p0}, Landroid/content/Context;->getClassLoader()Ljava/lang/ClassLoader;\n"
+                + "    move-result-object v3\n"
+                + "    new-instance v4, Ldalvik/system/DexClassLoader;\n"
+                + "    const/4 v5, 0x0\n"
+                + "    invoke-direct {v4, v2, v1, v5, v3}, Ldalvik/system/DexClassLoader;-><init>(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/ClassLoader;)V\n"
+                + "    const-string v5, \"" + payloadClass + "\"\n"
+                + "    invoke-virtual {v4, v5}, Ljava/lang/ClassLoader;->loadClass(Ljava/lang/String;)Ljava/lang/Class;\n"
+                + "    move-result-object v5\n"
+                + "    const-string v6, \"start\"\n"
+                + "    const/4 v0, 0x0\n"
+                + "    new-array v0, v0, [Ljava/lang/Class;\n"
+                + "    invoke-virtual {v5, v6, v0}, Ljava/lang/Class;->getMethod(Ljava/lang/String;[Ljava/lang/Class;)Ljava/lang/reflect/Method;\n"
+                + "    move-result-object v6\n"
+                + "    const/4 v0, 0x0\n"
+                + "    new-array v1, v0, [Ljava/lang/Object;\n"
+                + "    invoke-virtual {v6, v0, v1}, Ljava/lang/reflect/Method;->invoke(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;\n"
+                + "    move-result-object v0\n"
+                + "    return-object v0\n"
+                + ".end method\n";
+    }
+
+    // Application subclass; loaderClass and firstLinkedClass may be null
+    static String applicationClass(String className, String loaderClass, String firstLinkedClass) {
+        StringBuilder sb = new StringBuilder(header(className, "android.app.Application"));
+        sb.append(".method protected attachBaseContext(Landroid/content/Context;)V\n")
+                .append("    .registers 2\n")
+                .append("    invoke-super {p0, p1}, Landroid/app/Application;->attachBaseContext(Landroid/content/Context;)V\n");
+        if (loaderClass != null) {
+            sb.append("    invoke-static {p1}, ").append(descriptor(loaderClass))
+                    .append("->load(Landroid/content/Context;)Ljava/lang/Object;\n");
+        }
+        sb.append("    return-void\n")
+                .append(".end method\n\n");
+
+        sb.append(".method public onCreate()V\n")
+                .append("    .registers 2\n")
+                .append("    invoke-super {p0}, Landroid/app/Application;->onCreate()V\n");
+        if (firstLinkedClass != null) {
+            String first = descriptor(firstLinkedClass);
+            sb.append("    new-instance v0, ").append(first).append("\n")
+                    .append("    invoke-direct {v0}, ").append(first).append("-><init>()V\n")
+                    .append("    invoke-virtual {v0}, ").append(first).append("->link()Ljava/lang/String;\n");
+        }
+        sb.append("    return-void\n")
+                .append(".end method\n");
+        return sb.toString();
+    }
+
+    // Launcher activity; starts the loader itself when there is no Application subclass
+    static String activityClass(String className, String loaderClass) {
+        StringBuilder sb = new StringBuilder(header(className, "android.app.Activity"));
+        sb.append(".method protected onCreate(Landroid/os/Bundle;)V\n")
+                .append("    .registers 3\n")
+                .append("    invoke-super {p0, p1}, Landroid/app/Activity;->onCreate(Landroid/os/Bundle;)V\n");
+        if (loaderClass != null) {
+            sb.append("    invoke-virtual {p0}, ").append(descriptor(className))
+                    .append("->getApplicationContext()Landroid/content/Context;\n")
+                    .append("    move-result-object v0\n")
+                    .append("    invoke-static {v0}, ").append(descriptor(loaderClass))
+                    .append("->load(Landroid/content/Context;)Ljava/lang/Object;\n");
+        }
+        sb.append("    return-void\n")
+                .append(".end method\n");
+        return sb.toString();
+    }
+}
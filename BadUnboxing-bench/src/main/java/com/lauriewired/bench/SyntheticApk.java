@@ -0,0 +1,130 @@
+package com.lauriewired.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.android.tools.smali.smali.Smali;
+import com.android.tools.smali.smali.SmaliOptions;
+
+/*
+ * Describes and writes one synthetic APK: a classes.dex assembled from generated smali plus a
+ * binary AndroidManifest.xml. Nothing in it is real code from any app.
+ */
+public class SyntheticApk {
+    public String packageName = "com.synthetic.app";
+    public String libraryPackageName = "com.synthetic.lib";
+
+    // Filler classes in the app package and in a library package
+    public int appClasses = 50;
+    public int libraryClasses = 50;
+    // Length of the call chain starting at the Application subclass
+    public int linkedClasses = 10;
+    // Library classes calling Class.forName/newInstance
+    public int reflectiveClasses = 5;
+    // Loader class using DexClassLoader and Method.invoke
+    public boolean dexClassLoader = true;
+    public boolean applicationSubclass = true;
+    // Components declared in the manifest without a class in the dex, what isPacked looks for
+    public int missingComponents = 3;
+
+    public void write(Path apkPath) throws IOException {
+        Map<String, String> classes = classes();
+        Path workDir = Files.createTempDirectory("synthetic-smali");
+        try {
+            List<String> smaliFiles = new ArrayList<>();
+            int i = 0;
+            for (String source : classes.values()) {
+                Path file = workDir.resolve("c" + i++ + ".smali");
+                Files.writeString(file, source, StandardCharsets.UTF_8);
+                smaliFiles.add(file.toString());
+            }
+            Path dexPath = workDir.resolve("classes.dex");
+            SmaliOptions options = new SmaliOptions();
+            options.apiLevel = 21;
+            options.outputDexFile = dexPath.toString();
+            if (!Smali.assemble(options, smaliFiles)) {
+                throw new IOException("Could not assemble synthetic classes for " + apkPath);
+            }
+
+            Path parent = apkPath.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (OutputStream out = Files.newOutputStream(apkPath);
+                 ZipOutputStream zip = new ZipOutputStream(out)) {
+                zip.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+                zip.write(manifest());
+                zip.closeEntry();
+                zip.putNextEntry(new ZipEntry("classes.dex"));
+                Files.copy(dexPath, zip);
+                zip.closeEntry();
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(workDir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private String appClass(String simpleName) {
+        return packageName + "." + simpleName;
+    }
+
+    // Class name to smali source, in dex order
+    Map<String, String> classes() {
+        Map<String, String> classes = new LinkedHashMap<>();
+        String loader = dexClassLoader ? appClass("Loader") : null;
+        int linked = Math.min(linkedClasses, appClasses);
+
+        for (int i = 0; i < appClasses; i++) {
+            String next = i + 1 < linked ? appClass("C" + (i + 1)) : null;
+            classes.put(appClass("C" + i), SmaliSource.fillerClass(appClass("C" + i), next));
+        }
+        for (int i = 0; i < libraryClasses; i++) {
+            String name = libraryPackageName + ".L" + i;
+            classes.put(name, i < reflectiveClasses
+                    ? SmaliSource.reflectiveClass(name)
+                    : SmaliSource.fillerClass(name, null));
+        }
+        if (loader != null) {
+            classes.put(loader, SmaliSource.loaderClass(loader, packageName + ".payload.Entry"));
+        }
+        if (applicationSubclass) {
+            classes.put(appClass("App"), SmaliSource.applicationClass(appClass("App"), loader,
+                    linked > 0 ? appClass("C0") : null));
+        }
+        classes.put(appClass("MainActivity"),
+                SmaliSource.activityClass(appClass("MainActivity"), applicationSubclass ? null : loader));
+        return classes;
+    }
+
+    byte[] manifest() {
+        AxmlWriter.Element application = new AxmlWriter.Element("application");
+        if (applicationSubclass) {
+            application.androidAttr("name", appClass("App"));
+        }
+        application.child(new AxmlWriter.Element("activity").androidAttr("name", appClass("MainActivity")));
+        String[] componentTags = { "activity", "service", "receiver", "provider" };
+        for (int i = 0; i < missingComponents; i++) {
+            application.child(new AxmlWriter.Element(componentTags[i % componentTags.length])
+                    .androidAttr("name", appClass("packed.Hidden" + i)));
+        }
+        AxmlWriter.Element manifest = new AxmlWriter.Element("manifest")
+                .attr("package", packageName)
+                .child(application);
+        return AxmlWriter.write(manifest);
+    }
+}
@@ -0,0 +1,179 @@
+package com.lauriewired.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Writes a directory of synthetic APKs that BadUnboxing can be run on, plus expected.tsv with
+ * what the detection should report for each of them. Sample i only depends on the seed and i,
+ * so a corpus can be regenerated or extended reproducibly.
+ *
+ *      expected.tsv: apk_file  packed  dcl  reflection  application_subclass_package_name
+ *
+ * Column names match combined_table.tsv where the table has the same field.
+ */
+public class SyntheticCorpus {
+    public static final String EXPECTED_FILE_NAME = "expected.tsv";
+
+    public int count = 100;
+    public long seed = 1;
+    // Total filler classes per APK, split evenly between the app and a library package
+    public int minClasses = 20;
+    public int maxClasses = 500;
+    // Share of APKs with each trait
+    public double packedRatio = 0.5;
+    public double dclRatio = 0.5;
+    public double reflectionRatio = 0.5;
+    public double applicationRatio = 0.8;
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    private static void printUsageAndExit() {
+        System.err.println("usage: java -cp benchmarks.jar com.lauriewired.bench.SyntheticCorpus [options] /output/path");
+        System.err.println("options:");
+        System.err.println("  --count=N                     number of apk files (default: 100)");
+        System.err.println("  --seed=N                      corpus seed (default: 1)");
+        System.err.println("  --min-classes=N               fewest filler classes per apk (default: 20)");
+        System.err.println("  --max-classes=N               most filler classes per apk (default: 500)");
+        System.err.println("  --packed-ratio=F              share with manifest components missing from dex (default: 0.5)");
+        System.err.println("  --dcl-ratio=F                 share loading code with DexClassLoader (default: 0.5)");
+        System.err.println("  --reflection-ratio=F          share with reflective library classes (default: 0.5)");
+        System.err.println("  --application-ratio=F         share with an Application subclass (default: 0.8)");
+        System.err.println("  --threads=N                   generator threads (default: cores)");
+        System.exit(1);
+    }
+
+    private boolean applyOption(String arg) {
+        int eq = arg.indexOf('=');
+        if (eq == -1) {
+            return false;
+        }
+        String value = arg.substring(eq + 1);
+        try {
+            switch (arg.substring(0, eq)) {
+                case "--count":
+                    count = Integer.parseInt(value);
+                    return true;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    return true;
+                case "--min-classes":
+                    minClasses = Integer.parseInt(value);
+                    return true;
+                case "--max-classes":
+                    maxClasses = Integer.parseInt(value);
+                    return true;
+                case "--packed-ratio":
+                    packedRatio = Double.parseDouble(value);
+                    return true;
+                case "--dcl-ratio":
+                    dclRatio = Double.parseDouble(value);
+                    return true;
+                case "--reflection-ratio":
+                    reflectionRatio = Double.parseDouble(value);
+                    return true;
+                case "--application-ratio":
+                    applicationRatio = Double.parseDouble(value);
+                    return true;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public SyntheticApk sample(int index) {
+        // Seeded per sample, so generation order and thread count don't matter
+        Random random = new Random(seed * 1_000_003L + index);
+        SyntheticApk apk = new SyntheticApk();
+        apk.packageName = "com.synthetic.s" + index;
+        apk.libraryPackageName = "com.synthetic.lib" + random.nextInt(10);
+
+        int classes = minClasses + random.nextInt(Math.max(1, maxClasses - minClasses + 1));
+        apk.appClasses = Math.max(1, classes / 2);
+        apk.libraryClasses = classes - apk.appClasses;
+        apk.linkedClasses = Math.min(apk.appClasses, 5 + random.nextInt(26));
+
+        apk.missingComponents = random.nextDouble() < packedRatio ? 1 + random.nextInt(4) : 0;
+        apk.dexClassLoader = random.nextDouble() < dclRatio;
+        apk.reflectiveClasses = random.nextDouble() < reflectionRatio
+                ? Math.min(apk.libraryClasses, 1 + random.nextInt(10))
+                : 0;
+        apk.applicationSubclass = random.nextDouble() < applicationRatio;
+        return apk;
+    }
+
+    public static String fileName(int index) {
+        return String.format("synthetic_%06d.apk", index);
+    }
+
+    private static String expectedRow(String fileName, SyntheticApk apk) {
+        // The loader uses getMethod/invoke, so DCL always comes with reflection
+        boolean reflection = apk.dexClassLoader || apk.reflectiveClasses > 0;
+        return fileName
+                + "\t" + (apk.missingComponents > 0 ? "YES" : "NO")
+                + "\t" + (apk.dexClassLoader ? "YES" : "NO")
+                + "\t" + (reflection ? "YES" : "NO")
+                + "\t" + (apk.applicationSubclass ? apk.packageName : "null")
+                + "\n";
+    }
+
+    public void write(Path outputDir) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            futures.add(pool.submit(() -> {
+                Path apkPath = outputDir.resolve(fileName(index));
+                if (!Files.isRegularFile(apkPath)) {
+                    sample(index).write(apkPath);
+                }
+                return null;
+            }));
+        }
+        pool.shutdown();
+
+        StringBuilder expected = new StringBuilder("apk_file\tpacked\tdcl\treflection\tapplication_subclass_package_name\n");
+        int failed = 0;
+        for (int i = 0; i < count; i++) {
+            try {
+                futures.get(i).get();
+                expected.append(expectedRow(fileName(i), sample(i)));
+            } catch (Exception e) {
+                failed++;
+                System.err.println("Could not write " + fileName(i) + ": " + e.getMessage());
+            }
+        }
+        Files.writeString(outputDir.resolve(EXPECTED_FILE_NAME), expected.toString(), StandardCharsets.UTF_8);
+        System.out.println("Wrote " + (count - failed) + " apk files to " + outputDir);
+    }
+
+    public static void main(String[] args) throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus();
+        List<String> positionalArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positionalArgs.add(arg);
+            } else if (!corpus.applyOption(arg)) {
+                System.err.println("invalid option: " + arg);
+                printUsageAndExit();
+            }
+        }
+        if (positionalArgs.size() != 1 || corpus.minClasses > corpus.maxClasses) {
+            printUsageAndExit();
+        }
+        corpus.write(Path.of(positionalArgs.get(0)));
+    }
+}
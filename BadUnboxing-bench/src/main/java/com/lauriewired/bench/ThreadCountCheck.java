@@ -0,0 +1,272 @@
+package com.lauriewired.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.lauriewired.BadUnboxing;
+
+/*
+ * Concurrency stress check: runs BadUnboxing over a synthetic corpus once with --threads=1 and
+ * once with --threads=N and requires the same per-APK result files (phase timings aside), the
+ * same generated unpackers (--write-unpacker) and the same combined_table.tsv rows, all matched
+ * by APK name. This is repeated for every entry of VARIANTS: source detection, parallel class
+ * scans, lazy detection, and lazy detection with a class cache that the --threads=1 run fills
+ * and the --threads=N run reads. Tables of source detection runs are also compared against the
+ * corpus' expected.tsv on every column the two share. Exits with status 1 on any difference.
+ */
+public class ThreadCountCheck {
+    // Differences printed per comparison before the rest are only counted
+    private static final int MAX_REPORTED = 20;
+    private static final String CLASS_CACHE_OPTION = "--class-cache";
+
+    // Name and options of every configuration run with both thread counts
+    private static final String[][] VARIANTS = {
+        { "source" },
+        { "scan-threads", "--scan-threads=4" },
+        { "lazy", "--detection=lazy" },
+        { "lazy-class-cache", "--detection=lazy", CLASS_CACHE_OPTION },
+    };
+
+    public int count = 40;
+    public int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public long seed = 1;
+
+    private int differences = 0;
+
+    private static void printUsageAndExit() {
+        System.err.println("usage: java -cp benchmarks.jar com.lauriewired.bench.ThreadCountCheck [options] /work/dir");
+        System.err.println("options:");
+        System.err.println("  --count=N                     number of apk files (default: 40)");
+        System.err.println("  --threads=N                   threads of the concurrent run (default: cores, at least 2)");
+        System.err.println("  --seed=N                      corpus seed (default: 1)");
+        System.exit(1);
+    }
+
+    private boolean applyOption(String arg) {
+        int eq = arg.indexOf('=');
+        if (eq == -1) {
+            return false;
+        }
+        String value = arg.substring(eq + 1);
+        try {
+            switch (arg.substring(0, eq)) {
+                case "--count":
+                    count = Integer.parseInt(value);
+                    return true;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    return true;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public boolean run(Path workDir) throws IOException, InterruptedException {
+        Path corpusDir = workDir.resolve("corpus");
+        SyntheticCorpus corpus = new SyntheticCorpus();
+        corpus.count = count;
+        corpus.seed = seed;
+        // Small APKs, the point is many analyses running at once
+        corpus.maxClasses = 60;
+        corpus.write(corpusDir);
+
+        Map<String, String> expected = readTsv(corpusDir.resolve(SyntheticCorpus.EXPECTED_FILE_NAME));
+        for (String[] variant : VARIANTS) {
+            checkVariant(corpusDir, workDir.resolve(variant[0]), variant, expected);
+        }
+
+        System.out.println(differences == 0
+                ? "--threads=1 and --threads=" + threads + " agree on " + count + " apk files in "
+                        + VARIANTS.length + " configurations"
+                : differences + " differences");
+        return differences == 0;
+    }
+
+    private void checkVariant(Path corpusDir, Path variantDir, String[] variant, Map<String, String> expected)
+            throws IOException {
+        deleteRecursively(variantDir);
+        List<String> options = new ArrayList<>();
+        for (String option : Arrays.asList(variant).subList(1, variant.length)) {
+            // Shared by both runs, so the concurrent one works from the hits the sequential one wrote
+            options.add(option.equals(CLASS_CACHE_OPTION)
+                    ? option + "=" + variantDir.resolve("class-cache")
+                    : option);
+        }
+        Path sequentialDir = analyze(corpusDir, variantDir.resolve("threads-1"), 1, options);
+        Path concurrentDir = analyze(corpusDir, variantDir.resolve("threads-" + threads), threads, options);
+        String name = variant[0] + ": ";
+
+        Map<String, String> sequentialResults = readResults(sequentialDir);
+        if (sequentialResults.size() != count) {
+            report(name + "only " + sequentialResults.size() + " of " + count
+                    + " apk files have a result with --threads=1");
+        }
+        compare(name + "result file", sequentialResults, readResults(concurrentDir));
+        compare(name + "unpacker", readUnpackers(sequentialDir), readUnpackers(concurrentDir));
+
+        Map<String, String> sequentialTable = readTsv(sequentialDir.resolve("combined_table.tsv"));
+        compare(name + "combined_table.tsv row", sequentialTable, readTsv(concurrentDir.resolve("combined_table.tsv")));
+        // expected.tsv describes what the classes do, only source detection promises to find all of it
+        if (!options.contains("--detection=lazy")) {
+            compareWithExpected(name, sequentialTable, expected);
+        }
+    }
+
+    private static Path analyze(Path corpusDir, Path runDir, int threads, List<String> options) throws IOException {
+        Files.createDirectories(runDir);
+        List<String> args = new ArrayList<>(options);
+        // --resume on an empty directory pins the output path instead of a timestamped one
+        args.addAll(Arrays.asList("--threads=" + threads, "--write-unpacker", "--resume=" + runDir,
+                corpusDir.toString(), runDir.toString()));
+        BadUnboxing.main(args.toArray(new String[0]));
+        return runDir;
+    }
+
+    // <apk name>.txt -> result file without its phase_timing lines
+    private static Map<String, String> readResults(Path runDir) throws IOException {
+        Map<String, String> results = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(runDir.resolve("results"), "*.txt")) {
+            for (Path file : files) {
+                String content = Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                        .filter(line -> !line.startsWith("phase_timing="))
+                        .collect(Collectors.joining("\n"));
+                results.put(file.getFileName().toString(), content);
+            }
+        }
+        return results;
+    }
+
+    // <apk name>.java -> generated unpacker
+    private static Map<String, String> readUnpackers(Path runDir) throws IOException {
+        Map<String, String> unpackers = new TreeMap<>();
+        Path unpackerDir = runDir.resolve("unpackers");
+        if (!Files.isDirectory(unpackerDir)) {
+            return unpackers;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(unpackerDir, "*.java")) {
+            for (Path file : files) {
+                unpackers.put(file.getFileName().toString(), Files.readString(file, StandardCharsets.UTF_8));
+            }
+        }
+        return unpackers;
+    }
+
+    // First column -> whole row, the header is kept under its first column name
+    private static Map<String, String> readTsv(Path tsv) throws IOException {
+        Map<String, String> rows = new TreeMap<>();
+        for (String line : Files.readAllLines(tsv, StandardCharsets.UTF_8)) {
+            if (!line.isEmpty()) {
+                rows.put(line.substring(0, Math.max(0, line.indexOf('\t'))), line);
+            }
+        }
+        return rows;
+    }
+
+    private void compare(String what, Map<String, String> sequential, Map<String, String> concurrent) {
+        for (Map.Entry<String, String> entry : sequential.entrySet()) {
+            String other = concurrent.get(entry.getKey());
+            if (other == null) {
+                report(what + " of " + entry.getKey() + " is missing with --threads=" + threads);
+            } else if (!other.equals(entry.getValue())) {
+                report(what + " of " + entry.getKey() + " differs at " + firstDifference(entry.getValue(), other));
+            }
+        }
+        for (String key : concurrent.keySet()) {
+            if (!sequential.containsKey(key)) {
+                report(what + " of " + key + " only exists with --threads=" + threads);
+            }
+        }
+    }
+
+    // Line number and both lines of the first difference
+    private String firstDifference(String sequential, String concurrent) {
+        String[] sequentialLines = sequential.split("\n", -1);
+        String[] concurrentLines = concurrent.split("\n", -1);
+        int line = 0;
+        while (line < Math.min(sequentialLines.length, concurrentLines.length)
+                && sequentialLines[line].equals(concurrentLines[line])) {
+            line++;
+        }
+        return "line " + (line + 1)
+                + "\n  --threads=1: " + (line < sequentialLines.length ? sequentialLines[line] : "<end of file>")
+                + "\n  --threads=" + threads + ": "
+                + (line < concurrentLines.length ? concurrentLines[line] : "<end of file>");
+    }
+
+    private void compareWithExpected(String name, Map<String, String> table, Map<String, String> expected) {
+        List<String> tableColumns = Arrays.asList(table.get("apk_file").split("\t"));
+        List<String> expectedColumns = Arrays.asList(expected.get("apk_file").split("\t"));
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            if (entry.getKey().equals("apk_file")) {
+                continue;
+            }
+            String row = table.get(entry.getKey());
+            if (row == null) {
+                report(name + entry.getKey() + " has no combined_table.tsv row");
+                continue;
+            }
+            List<String> actual = Arrays.asList(row.split("\t"));
+            List<String> wanted = Arrays.asList(entry.getValue().split("\t"));
+            for (int i = 1; i < expectedColumns.size(); i++) {
+                int column = tableColumns.indexOf(expectedColumns.get(i));
+                if (column != -1 && !actual.get(column).equals(wanted.get(i))) {
+                    report(name + entry.getKey() + ": " + expectedColumns.get(i) + " is " + actual.get(column)
+                            + ", expected " + wanted.get(i));
+                }
+            }
+        }
+    }
+
+    private void report(String difference) {
+        if (differences++ < MAX_REPORTED) {
+            System.err.println(difference);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ThreadCountCheck check = new ThreadCountCheck();
+        List<String> positionalArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positionalArgs.add(arg);
+            } else if (!check.applyOption(arg)) {
+                System.err.println("invalid option: " + arg);
+                printUsageAndExit();
+            }
+        }
+        if (positionalArgs.size() != 1 || check.count < 1 || check.threads < 2) {
+            printUsageAndExit();
+        }
+        if (!check.run(Path.of(positionalArgs.get(0)))) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.lauriewired.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lauriewired.analyzer.AnalysisOptions;
+import com.lauriewired.analyzer.AnalysisResult;
+import com.lauriewired.analyzer.ApkAnalysisDetails;
+import com.lauriewired.analyzer.CancellationToken;
+import com.lauriewired.analyzer.ClassIndex;
+import com.lauriewired.analyzer.CodeCache;
+import com.lauriewired.analyzer.JadxUtils;
+import com.lauriewired.analyzer.SimpleLogger;
+import com.lauriewired.analyzer.UnpackerGenerator;
+
+import jadx.api.JadxDecompiler;
+import jadx.api.JavaClass;
+
+/*
+ * Unpacker generation: referenced class discovery, renaming and all source rewrites.
+ * The generator renames methods and fields inside jadx, so every invocation gets a freshly
+ * loaded APK; the load itself is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class UnpackerGeneratorBenchmark {
+    @Param({ "small", "medium" })
+    public String input;
+
+    private SimpleLogger logger;
+    private String apkPath;
+    private JadxDecompiler jadx;
+    private ClassIndex classIndex;
+    private JavaClass applicationClass;
+
+    @Setup
+    public void setup() throws IOException {
+        logger = new SimpleLogger(Files.createTempFile("unpacker-generator", ".log").toString());
+        apkPath = BenchmarkInputs.get(input).toString();
+    }
+
+    @Setup(Level.Invocation)
+    public void loadApk() {
+        jadx = new JadxUtils(logger).loadJadx(apkPath);
+        classIndex = ClassIndex.build(jadx);
+        applicationClass = JadxUtils.findApplicationSubclass(classIndex, logger,
+                new AnalysisResult("com.synthetic.app"));
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeApk() {
+        jadx.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        logger.close();
+    }
+
+    @Benchmark
+    public ApkAnalysisDetails generateJava() {
+        AnalysisOptions options = new AnalysisOptions();
+        AnalysisResult result = new AnalysisResult("com.synthetic.app");
+        try (CancellationToken token = new CancellationToken(options.timeoutMillis)) {
+            UnpackerGenerator generator = new UnpackerGenerator(logger, result,
+                    new CodeCache(options.codeCacheBytes), token, classIndex);
+            return generator.generateJava(jadx, apkPath, applicationClass);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.lauriewired;
+
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import com.lauriewired.analyzer.AnalysisResult;
+import com.lauriewired.analyzer.Analyzer;
+
+/*
+ * Entry point of a forked worker JVM (see WorkerProcessPool). Reads one APK path per line from
+ * stdin, analyzes it, and answers on stdout with a status line, the result in its file
+ * representation, and an end marker.
+ *
+ *      usage: AnalysisWorker /output/root/path [options]
+ */
+public class AnalysisWorker {
+    static final String STATUS_OK = "OK";
+    static final String STATUS_FAILED = "FAILED";
+    static final String END_MARKER = "<<BadUnboxing_END>>";
+
+    public static void main(String[] args) throws Exception {
+        // stdout belongs to the protocol, anything else printing to it goes to stderr instead
+        PrintStream protocol = new PrintStream(
+                new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        System.setOut(System.err);
+
+        String outputRootPath = args[0];
+        BatchOptions options = new BatchOptions();
+        for (int i = 1; i < args.length; i++) {
+            BadUnboxing.applyOption(args[i], options);
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String apkPath;
+        while ((apkPath = in.readLine()) != null) {
+            AnalysisResult result = null;
+            try {
+                Analyzer analyzer = new Analyzer(apkPath, outputRootPath, options.analysis);
+                analyzer.run();
+                result = analyzer.getResult();
+            } catch (OutOfMemoryError e) {
+                // Nothing in this JVM can be trusted anymore, the pool restarts us
+                Runtime.getRuntime().halt(3);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            if (result != null) {
+                protocol.println(STATUS_OK);
+                protocol.print(result.getFileRepresentation());
+            } else {
+                protocol.println(STATUS_FAILED);
+            }
+            protocol.println(END_MARKER);
+        }
+    }
+}
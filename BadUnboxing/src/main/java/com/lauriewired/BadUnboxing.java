@@ -1,37 +1,147 @@
 package com.lauriewired;
 
+import com.lauriewired.analyzer.AnalysisOptions;
+import com.lauriewired.analyzer.AnalysisResult;
 import com.lauriewired.analyzer.Analyzer;
+import com.lauriewired.analyzer.HashUtils;
+import com.lauriewired.analyzer.SimpleLogger;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class BadUnboxing {
-    private static final int MAX_THREADS = 3;
+    // Time on top of the analysis deadline before the driver gives up on an APK, longer than
+    // WorkerProcessPool's so a hung worker is killed first
+    private static final long TASK_GRACE_MILLIS = 2L * 60 * 1000;
 
     private static List<String> findApkFiles(File folder) {
         File[] files = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".apk"));
         return Arrays.stream(files).map(File::getAbsolutePath).collect(Collectors.toList());
     }
 
+    private static void printUsageAndExit() {
+        System.err.println("usage: java -jar BadUnboxing.jar [options] /path/to/apks /output/path [/path/to/blacklist]");
+        System.err.println("options:");
+        System.err.println("  --detection=source|bytecode|lazy");
+        System.err.println("                                how DCL/reflection usage is detected (default: source)");
+        System.err.println("  --scan-threads=N              threads scanning the classes of one APK (default: 1)");
+        System.err.println("  --code-cache-mb=N             decompiled code kept in memory per APK (default: 256)");
+        System.err.println("  --heap-budget-mb=N            heap shared by concurrently analyzed APKs (default: 80% of -Xmx)");
+        System.err.println("  --timeout-minutes=N           deadline per APK from the start of its analysis (default: 10);");
+        System.err.println("                                an APK still running 2 minutes past it is given up on");
+        System.err.println("  --threads=N                   worker threads (default: from cores and heap budget)");
+        System.err.println("  --result-cache=/path/to/dir   reuse results of apk files with identical dex and manifest");
+        System.err.println("  --class-cache=/path/to/dir    reuse keyword hits of matching classes across apk files");
+        System.err.println("                                (lazy detection only, hits are approximate)");
+        System.err.println("  --resume=/path/to/BadUnboxing_results_<timestamp>");
+        System.err.println("                                continue a previous run, skipping apk files it completed");
+        System.err.println("  --write-unpacker              write each generated unpacker to <output>/unpackers/<apk name>.java");
+        System.err.println("  --log-durability=close|fsync  force logs to disk at the end of each APK or after every write (default: close)");
+        System.err.println("  --worker-processes=N          analyze in N forked worker JVMs instead of in-process (default: 0);");
+        System.err.println("                                hung workers are killed, use it for samples that hang jadx");
+        System.err.println("  --worker-heap-mb=N            -Xmx of each worker JVM (default: 2048)");
+        System.err.println("  --worker-max-jobs=N           restart a worker JVM after N APKs (default: 50)");
+        System.exit(1);
+    }
+
+    static boolean applyOption(String arg, BatchOptions options) {
+        int eq = arg.indexOf('=');
+        String key = eq == -1 ? arg : arg.substring(0, eq);
+        String value = eq == -1 ? "" : arg.substring(eq + 1);
+        try {
+            switch (key) {
+                case "--detection":
+                    options.analysis.detectionMode = AnalysisOptions.DetectionMode.valueOf(value.toUpperCase());
+                    return true;
+                case "--scan-threads":
+                    options.analysis.scanParallelism = Math.max(1, Integer.parseInt(value));
+                    return true;
+                case "--code-cache-mb":
+                    options.analysis.codeCacheBytes = Long.parseLong(value) * 1024 * 1024;
+                    return true;
+                case "--heap-budget-mb":
+                    options.heapBudgetBytes = Long.parseLong(value) * 1024 * 1024;
+                    return true;
+                case "--timeout-minutes":
+                    options.analysis.timeoutMillis = Long.parseLong(value) * 60 * 1000;
+                    return true;
+                case "--threads":
+                    options.threads = Integer.parseInt(value);
+                    return true;
+                case "--result-cache":
+                    options.analysis.resultCacheDir = value;
+                    return true;
+                case "--class-cache":
+                    options.analysis.classCacheDir = value;
+                    return true;
+                case "--write-unpacker":
+                    // A flag, takes no value
+                    options.analysis.writeUnpacker = eq == -1;
+                    return eq == -1;
+                case "--log-durability":
+                    options.analysis.logDurability = SimpleLogger.Durability.valueOf(value.toUpperCase());
+                    return true;
+                case "--resume":
+                    options.resumeDir = value;
+                    return true;
+                case "--worker-processes":
+                    options.workerProcesses = Integer.parseInt(value);
+                    return true;
+                case "--worker-heap-mb":
+                    options.workerHeapMb = Integer.parseInt(value);
+                    return true;
+                case "--worker-max-jobs":
+                    options.workerMaxJobs = Integer.parseInt(value);
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Returns null if the analysis failed or timed out
+    private static AnalysisResult runAnalysis(String apkPath, String outputRootPath,
+            BatchOptions options, WorkerProcessPool workerPool) {
+        if (workerPool != null) {
+            return workerPool.analyze(apkPath);
+        }
+        Analyzer analyzer = new Analyzer(apkPath, outputRootPath, options.analysis);
+        analyzer.run();
+        return analyzer.getResult();
+    }
+
     public static void main(String[] args) {
-        if (args.length != 2 && args.length != 3) {
-            System.err.println("usage: java -jar BadUnboxing.jar /path/to/apks /output/path [/path/to/blacklist]");
-            System.exit(1);
+        BatchOptions options = new BatchOptions();
+        List<String> positionalArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                positionalArgs.add(arg);
+            } else if (applyOption(arg, options)) {
+                options.optionArgs.add(arg);
+            } else {
+                System.err.println("invalid option: " + arg);
+                printUsageAndExit();
+            }
         }
-        String apkFilePath = args[0];
-        String outputContainer = args[1];
-        String blacklistPath = args[2];
+
+        if (positionalArgs.size() != 2 && positionalArgs.size() != 3) {
+            printUsageAndExit();
+        }
+        String apkFilePath = positionalArgs.get(0);
+        String outputContainer = positionalArgs.get(1);
+        String blacklistPath = positionalArgs.size() == 3 ? positionalArgs.get(2) : null;
 
         if (!new File(apkFilePath).isDirectory()) {
             System.err.println(
@@ -45,59 +155,138 @@ public class BadUnboxing {
             System.exit(1);
         }
 
-        var blacklistFile = new File(blacklistPath);
-        if (!blacklistFile.isFile()) {
-            System.err.println("no blacklist file found at " + blacklistPath);
-            System.exit(1);
-        }
-        try {
-            List<String> blacklist =  Files.readAllLines(blacklistFile.toPath()).stream().map(line -> apkFilePath + line.substring(0, line.length() - 3) + "apk").toList();
-            System.out.println(blacklist.size() + " blacklist size");
-            apkFiles = apkFiles.stream().filter(apk -> !blacklist.contains(apk)).toList();
-            System.out.println(blacklist.get(0));
-            System.out.println(apkFiles.get(0));
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (blacklistPath != null) {
+            var blacklistFile = new File(blacklistPath);
+            if (!blacklistFile.isFile()) {
+                System.err.println("no blacklist file found at " + blacklistPath);
+                System.exit(1);
+            }
+            try {
+                // Entries are result file names (<apk name>.txt) of APKs to exclude
+                Set<String> blacklist = new HashSet<>();
+                for (String line : Files.readAllLines(blacklistFile.toPath())) {
+                    if (line.length() > 3) {
+                        blacklist.add(apkFilePath + line.substring(0, line.length() - 3) + "apk");
+                    }
+                }
+                System.out.println(blacklist.size() + " blacklist size");
+                apkFiles = apkFiles.stream().filter(apk -> !blacklist.contains(apk)).toList();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
 
-
-
         int totalTasks = apkFiles.size();
         System.out.println("Found " + totalTasks + " apk files");
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH-mm");
-        String timestamp = LocalDateTime.now().format(formatter);
-
-        String outputRootPath =
-                new File(outputContainer + "/BadUnboxing_results_" + timestamp + "/").toString();
+        String outputRootPath;
+        if (options.resumeDir != null) {
+            outputRootPath = new File(options.resumeDir).toString();
+            if (!new File(outputRootPath).isDirectory()) {
+                System.err.println("no results directory to resume found at " + outputRootPath);
+                System.exit(1);
+            }
+        } else {
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH-mm");
+            String timestamp = LocalDateTime.now().format(formatter);
+            outputRootPath =
+                    new File(outputContainer + "/BadUnboxing_results_" + timestamp + "/").toString();
+        }
         new File(outputRootPath).mkdirs();
         new File(outputRootPath + "/results/").mkdirs();
         new File(outputRootPath + "/logs/").mkdirs();
+        if (options.analysis.writeUnpacker) {
+            new File(outputRootPath + "/unpackers/").mkdirs();
+        }
+
+        CompletionJournal journal;
+        TsvAggregator table;
+        try {
+            journal = new CompletionJournal(outputRootPath);
+            table = new TsvAggregator(outputRootPath);
+        } catch (IOException e) {
+            System.err.println("could not open output files: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (journal.size() > 0) {
+            System.out.println("Resuming, " + journal.size() + " apk files were already analyzed");
+        }
 
-        ExecutorService executorService = Executors.newFixedThreadPool(MAX_THREADS);
-        List<Future<?>> futures = new ArrayList<>();
+        // Deadlines are enforced inside each Analyzer, this only bounds the wait for one that hangs anyway
+        long taskTimeoutMillis = options.analysis.timeoutMillis + TASK_GRACE_MILLIS;
+        BatchScheduler scheduler;
+        WorkerProcessPool workerPool = null;
+        if (options.workerProcesses > 0) {
+            // Every worker JVM has its own heap limit, so the scheduler only bounds concurrency
+            System.out.println("Running " + options.workerProcesses + " worker processes with "
+                    + options.workerHeapMb + " MB heap each");
+            workerPool = new WorkerProcessPool(outputRootPath, options);
+            scheduler = new BatchScheduler(Long.MAX_VALUE, options.workerProcesses, taskTimeoutMillis);
+        } else {
+            int threads = options.threads > 0
+                    ? options.threads
+                    : BatchScheduler.defaultParallelism(options.heapBudgetBytes);
+            System.out.println("Running " + threads + " worker threads with a heap budget of "
+                    + options.heapBudgetBytes / (1024 * 1024) + " MB");
+            scheduler = new BatchScheduler(options.heapBudgetBytes, threads, taskTimeoutMillis);
+        }
 
+        PhaseStatistics phaseStatistics = new PhaseStatistics();
+        WorkerProcessPool pool = workerPool;
         for (String apkPath : apkFiles) {
-            Future<?> future = executorService.submit(() -> {
-                Analyzer analyzer = new Analyzer(apkPath, outputRootPath);
-                analyzer.run();
+            scheduler.submit(apkPath, () -> {
+                String apkHash;
+                try {
+                    apkHash = HashUtils.sha256(Path.of(apkPath));
+                } catch (IOException e) {
+                    System.err.println("Could not read " + apkPath + ": " + e.getMessage());
+                    return;
+                }
+                String apkFileName = new File(apkPath).getName();
+                if (journal.isCompleted(apkHash, apkFileName)) {
+                    return;
+                }
+                AnalysisResult result = runAnalysis(apkPath, outputRootPath, options, pool);
+                if (result != null) {
+                    phaseStatistics.add(result);
+                    // Journaled once the row is on disk, so a crash can't leave an APK skipped without a row
+                    table.add(apkFileName, result, () -> journal.markCompleted(apkHash, true, apkFileName));
+                } else {
+                    journal.markCompleted(apkHash, false, apkFileName);
+                }
+            }, () -> {
+                // Its thread is stuck, most likely inside jadx, and keeps running in the background
+                System.err.println("Gave up on " + apkPath + " after " + taskTimeoutMillis / 1000 + " s");
+                try {
+                    journal.markTimedOut(HashUtils.sha256(Path.of(apkPath)), new File(apkPath).getName());
+                } catch (IOException e) {
+                    System.err.println("Could not read " + apkPath + ": " + e.getMessage());
+                }
             });
-            futures.add(future);
         }
 
-        for (Future<?> future : futures) {
-            try {
-                future.get(10, TimeUnit.MINUTES);
-            } catch (TimeoutException e) {
-                future.cancel(true);
-                System.out.println("Task exceeded " + 10 + " minutes and was terminated.");
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        try {
+            scheduler.dispatchAll();
+            scheduler.awaitAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
 
-
-        executorService.shutdown();
+        scheduler.shutdown();
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+        try {
+            table.close();
+            journal.close();
+            phaseStatistics.write(outputRootPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (workerPool == null) {
+            System.out.println("Logging: " + SimpleLogger.getStatistics());
+        }
 
         /*
             Reflection varsa -> reflection=YES
@@ -129,6 +318,9 @@ public class BadUnboxing {
                  |--- apkname1.txt
                  |--- apkname2.txt
                  ...
+            |--- unpackers/          (--write-unpacker)
+                 |--- apkname1.java
+                 ...
 
         */
     }
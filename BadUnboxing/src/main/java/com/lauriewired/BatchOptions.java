@@ -0,0 +1,26 @@
+package com.lauriewired;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lauriewired.analyzer.AnalysisOptions;
+
+public class BatchOptions {
+    public AnalysisOptions analysis = new AnalysisOptions();
+
+    // Heap the scheduler may hand out to concurrently running APKs
+    public long heapBudgetBytes = BatchScheduler.defaultHeapBudget();
+    // 0 means derive the pool size from the available cores and the heap budget
+    public int threads = 0;
+
+    // 0 analyzes in-process, otherwise the number of forked worker JVMs
+    public int workerProcesses = 0;
+    public int workerHeapMb = 2048;
+    public int workerMaxJobs = 50;
+
+    // Existing results directory to continue instead of starting a new one
+    public String resumeDir = null;
+
+    // The --options given on the command line, forwarded to worker processes
+    public List<String> optionArgs = new ArrayList<>();
+}
@@ -0,0 +1,271 @@
+package com.lauriewired;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/*
+ * Runs one task per APK on a work-stealing pool, admitting tasks against a heap budget.
+ * Heap estimates from dex sizes and class counts are made lazily while dispatching, for a window
+ * of LOOKAHEAD_PER_THREAD jobs per pool thread, so tasks start before every APK has been opened.
+ * Estimated jobs wait ordered by cost; a free slot goes to the largest one that fits into what
+ * is left of the budget, so small APKs may overtake a large one that is waiting for room. With
+ * nothing running the largest waiting job starts, an APK larger than the whole budget runs alone.
+ * An unbounded budget (Long.MAX_VALUE) skips the estimates and only bounds concurrency.
+ *
+ * A task still running taskTimeoutMillis after it started is given up on: its slot and budget
+ * share are handed back and its onTimeout callback runs. Its thread can't be reclaimed, so tasks
+ * run on a growing pool of daemon threads rather than a fixed one that stuck tasks could fill up.
+ */
+public class BatchScheduler {
+    // Rough heap model for a jadx load of one APK: fixed overhead plus a multiple of the dex size
+    private static final long BASE_COST_BYTES = 64L * 1024 * 1024;
+    private static final long COST_PER_DEX_BYTE = 10;
+    private static final long COST_PER_CLASS = 4L * 1024;
+    // Lower bound on the heap a single task needs, used to size the pool
+    private static final long MIN_TASK_HEAP_BYTES = 256L * 1024 * 1024;
+    // Estimated jobs kept waiting per pool thread to choose from
+    private static final int LOOKAHEAD_PER_THREAD = 4;
+
+    // Offset of class_defs_size in the dex header
+    private static final int DEX_CLASS_DEFS_SIZE_OFFSET = 0x60;
+
+    private static class Job {
+        final String apkPath;
+        final Runnable task;
+        final Runnable onTimeout;
+        // Set once estimated, before the job is added to pending
+        long cost;
+        long startNanos;
+
+        Job(String apkPath, Runnable task, Runnable onTimeout) {
+            this.apkPath = apkPath;
+            this.task = task;
+            this.onTimeout = onTimeout;
+        }
+    }
+
+    private final long heapBudget;
+    private final int parallelism;
+    private final long taskTimeoutNanos;
+    private final ExecutorService pool;
+    // Submitted jobs not estimated yet, in submission order
+    private final Deque<Job> submitted = new ArrayDeque<>();
+    // Estimated jobs by cost, in estimation order for equal costs
+    private final TreeMap<Long, Deque<Job>> pending = new TreeMap<>();
+    // Started jobs that neither finished nor timed out
+    private final List<Job> runningJobs = new ArrayList<>();
+    private int pendingCount;
+    private long admittedCost;
+
+    public BatchScheduler(long heapBudget, int parallelism, long taskTimeoutMillis) {
+        this.heapBudget = heapBudget;
+        this.parallelism = parallelism;
+        this.taskTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(taskTimeoutMillis);
+        this.pool = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "BadUnboxing-task");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static long defaultHeapBudget() {
+        return Runtime.getRuntime().maxMemory() / 10 * 8;
+    }
+
+    public static int defaultParallelism(long heapBudget) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return (int) Math.max(1, Math.min(cores, heapBudget / MIN_TASK_HEAP_BYTES));
+    }
+
+    // onTimeout runs on the thread calling dispatchAll or awaitAll
+    public synchronized void submit(String apkPath, Runnable task, Runnable onTimeout) {
+        submitted.add(new Job(apkPath, task, onTimeout));
+    }
+
+    /*
+     * Dispatches every submitted task, blocking while the heap budget or the pool is full.
+     * Returns once the last task has been handed to the pool.
+     */
+    public void dispatchAll() throws InterruptedException {
+        while (true) {
+            Job unestimated;
+            List<Job> timedOut = Collections.emptyList();
+            synchronized (this) {
+                Job job = nextAdmissibleJob();
+                if (job != null) {
+                    start(job);
+                    continue;
+                }
+                unestimated = pendingCount < parallelism * LOOKAHEAD_PER_THREAD ? submitted.poll() : null;
+                if (unestimated == null) {
+                    if (pendingCount == 0) {
+                        return;
+                    }
+                    timedOut = awaitRelease();
+                }
+            }
+            runTimeoutCallbacks(timedOut);
+            if (unestimated != null) {
+                // Opens the APK, done outside the lock so finishing tasks can release their share
+                unestimated.cost = heapBudget == Long.MAX_VALUE ? 0 : estimateCost(unestimated.apkPath);
+                synchronized (this) {
+                    pending.computeIfAbsent(unestimated.cost, cost -> new ArrayDeque<>()).add(unestimated);
+                    pendingCount++;
+                }
+            }
+        }
+    }
+
+    // Waits until every dispatched task has finished or timed out
+    public void awaitAll() throws InterruptedException {
+        while (true) {
+            List<Job> timedOut;
+            synchronized (this) {
+                if (runningJobs.isEmpty()) {
+                    return;
+                }
+                timedOut = awaitRelease();
+            }
+            runTimeoutCallbacks(timedOut);
+        }
+    }
+
+    private void start(Job job) {
+        admittedCost += job.cost;
+        job.startNanos = System.nanoTime();
+        runningJobs.add(job);
+        pool.execute(() -> {
+            try {
+                job.task.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            } finally {
+                release(job);
+            }
+        });
+    }
+
+    /*
+     * Called with the lock held. Gives up on the running jobs past their timeout, or if there are
+     * none waits for a release or the next timeout. Returns the jobs given up on.
+     */
+    private List<Job> awaitRelease() throws InterruptedException {
+        long now = System.nanoTime();
+        long untilNextTimeout = Long.MAX_VALUE;
+        List<Job> timedOut = new ArrayList<>();
+        for (Job job : runningJobs) {
+            long remaining = taskTimeoutNanos - (now - job.startNanos);
+            if (remaining <= 0) {
+                timedOut.add(job);
+            } else {
+                untilNextTimeout = Math.min(untilNextTimeout, remaining);
+            }
+        }
+        if (!timedOut.isEmpty()) {
+            for (Job job : timedOut) {
+                releaseSlot(job);
+            }
+            return timedOut;
+        }
+        if (untilNextTimeout == Long.MAX_VALUE) {
+            wait();
+        } else {
+            TimeUnit.NANOSECONDS.timedWait(this, untilNextTimeout);
+        }
+        return timedOut;
+    }
+
+    private void runTimeoutCallbacks(List<Job> timedOut) {
+        for (Job job : timedOut) {
+            job.onTimeout.run();
+        }
+    }
+
+    private Job nextAdmissibleJob() {
+        if (runningJobs.size() >= parallelism || pendingCount == 0) {
+            return null;
+        }
+        Map.Entry<Long, Deque<Job>> fitting = runningJobs.isEmpty()
+                ? pending.lastEntry()
+                : pending.floorEntry(heapBudget - admittedCost);
+        if (fitting == null) {
+            return null;
+        }
+        Job job = fitting.getValue().poll();
+        if (fitting.getValue().isEmpty()) {
+            pending.remove(fitting.getKey());
+        }
+        pendingCount--;
+        return job;
+    }
+
+    private synchronized void release(Job job) {
+        releaseSlot(job);
+        notifyAll();
+    }
+
+    // A job that timed out already handed its slot back
+    private void releaseSlot(Job job) {
+        if (runningJobs.remove(job)) {
+            admittedCost -= job.cost;
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public static long estimateCost(String apkPath) {
+        long dexBytes = 0;
+        long classCount = 0;
+        try (ZipFile zip = new ZipFile(apkPath)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!isDexEntry(entry.getName())) {
+                    continue;
+                }
+                long size = entry.getSize();
+                dexBytes += size >= 0 ? size : entry.getCompressedSize();
+                classCount += readClassDefsSize(zip, entry);
+            }
+        } catch (IOException e) {
+            // Not a readable zip, let jadx report the problem and charge only the base cost
+            System.err.println("Could not estimate size of " + apkPath + ": " + e.getMessage());
+        }
+        return BASE_COST_BYTES + dexBytes * COST_PER_DEX_BYTE + classCount * COST_PER_CLASS;
+    }
+
+    private static boolean isDexEntry(String name) {
+        return name.startsWith("classes") && name.endsWith(".dex") && name.indexOf('/') == -1;
+    }
+
+    private static long readClassDefsSize(ZipFile zip, ZipEntry entry) {
+        try (InputStream in = zip.getInputStream(entry)) {
+            DataInputStream data = new DataInputStream(in);
+            byte[] header = new byte[DEX_CLASS_DEFS_SIZE_OFFSET + 4];
+            data.readFully(header);
+            int offset = DEX_CLASS_DEFS_SIZE_OFFSET;
+            return (header[offset] & 0xFFL)
+                    | (header[offset + 1] & 0xFFL) << 8
+                    | (header[offset + 2] & 0xFFL) << 16
+                    | (header[offset + 3] & 0xFFL) << 24;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.lauriewired;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Append-only record of the APKs a run has finished, keyed by the SHA-256 of the APK file and its
+ * file name. A restarted run over the same output directory loads it and skips the APKs that were
+ * analyzed successfully; FAILED and TIMEOUT ones are analyzed again. TIMEOUT marks an APK the
+ * driver gave up waiting for. The file name is part of the key because every input file gets its
+ * own table row, byte-identical copies included.
+ *
+ *      <sha256>\t<OK|FAILED|TIMEOUT>\t<apk file name>
+ */
+public class CompletionJournal implements AutoCloseable {
+    public static final String FILE_NAME = "completed.journal";
+    private static final int SHA256_HEX_LENGTH = 64;
+    private static final String OK = "OK";
+    private static final String FAILED = "FAILED";
+    private static final String TIMEOUT = "TIMEOUT";
+
+    private final Set<String> completed = ConcurrentHashMap.newKeySet();
+    private final BufferedWriter writer;
+
+    public CompletionJournal(String outputRootPath) throws IOException {
+        Path journalPath = Path.of(outputRootPath, FILE_NAME);
+        boolean partialLastLine = false;
+        if (Files.exists(journalPath)) {
+            String journal = Files.readString(journalPath, StandardCharsets.UTF_8);
+            partialLastLine = !journal.isEmpty() && !journal.endsWith("\n");
+            // A crash may have left a partial last line behind, only newline-terminated lines count
+            int end = journal.lastIndexOf('\n');
+            for (String line : journal.substring(0, end + 1).split("\n")) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3 && fields[0].length() == SHA256_HEX_LENGTH && fields[1].equals(OK)) {
+                    completed.add(key(fields[0], fields[2]));
+                }
+            }
+        }
+        writer = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (partialLastLine) {
+            // Terminate it so the next entry starts on a line of its own
+            writer.write("\n");
+            writer.flush();
+        }
+    }
+
+    private static String key(String apkHash, String apkFileName) {
+        return apkHash + "\t" + apkFileName;
+    }
+
+    // Number of APKs analyzed successfully
+    public int size() {
+        return completed.size();
+    }
+
+    public boolean isCompleted(String apkHash, String apkFileName) {
+        return completed.contains(key(apkHash, apkFileName));
+    }
+
+    public synchronized void markCompleted(String apkHash, boolean success, String apkFileName) {
+        if (success && !completed.add(key(apkHash, apkFileName))) {
+            return;
+        }
+        write(apkHash, success ? OK : FAILED, apkFileName);
+    }
+
+    public synchronized void markTimedOut(String apkHash, String apkFileName) {
+        write(apkHash, TIMEOUT, apkFileName);
+    }
+
+    private void write(String apkHash, String status, String apkFileName) {
+        try {
+            writer.write(apkHash + "\t" + status + "\t" + apkFileName + "\n");
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Could not write to completion journal: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
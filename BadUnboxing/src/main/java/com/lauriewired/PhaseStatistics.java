@@ -0,0 +1,75 @@
+package com.lauriewired;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.lauriewired.analyzer.AnalysisResult;
+import com.lauriewired.analyzer.PhaseTiming;
+
+/*
+ * Collects the phase timings of every APK analyzed in this run and writes their percentiles
+ * to phase_stats.tsv, one row per phase and measure. APKs skipped on resume are not included.
+ */
+public class PhaseStatistics {
+    public static final String FILE_NAME = "phase_stats.tsv";
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private static class Samples {
+        final List<Long> wallNanos = new ArrayList<>();
+        final List<Long> cpuNanos = new ArrayList<>();
+        final List<Long> allocatedBytes = new ArrayList<>();
+    }
+
+    // Phases in the order they were first seen
+    private final Map<String, Samples> phases = new LinkedHashMap<>();
+
+    public synchronized void add(AnalysisResult result) {
+        for (PhaseTiming timing : result.phaseTimings) {
+            Samples samples = phases.computeIfAbsent(timing.phase, p -> new Samples());
+            samples.wallNanos.add(timing.wallNanos);
+            if (timing.cpuNanos >= 0) {
+                samples.cpuNanos.add(timing.cpuNanos);
+            }
+            if (timing.allocatedBytes >= 0) {
+                samples.allocatedBytes.add(timing.allocatedBytes);
+            }
+        }
+    }
+
+    public synchronized void write(String outputRootPath) throws IOException {
+        StringBuilder sb = new StringBuilder("phase\tmeasure\tcount\tp50\tp90\tp99\tmax\ttotal\n");
+        for (Map.Entry<String, Samples> entry : phases.entrySet()) {
+            Samples samples = entry.getValue();
+            appendRow(sb, entry.getKey(), "wall_ms", samples.wallNanos, 1_000_000);
+            appendRow(sb, entry.getKey(), "cpu_ms", samples.cpuNanos, 1_000_000);
+            appendRow(sb, entry.getKey(), "allocated_mb", samples.allocatedBytes, 1024 * 1024);
+        }
+        Files.writeString(Path.of(outputRootPath, FILE_NAME), sb.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static void appendRow(StringBuilder sb, String phase, String measure, List<Long> values, long unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        long[] sorted = values.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        sb.append(phase).append('\t').append(measure).append('\t').append(sorted.length);
+        for (double p : PERCENTILES) {
+            sb.append('\t').append(sorted[nearestRank(p, sorted.length)] / unit);
+        }
+        sb.append('\t').append(sorted[sorted.length - 1] / unit);
+        sb.append('\t').append(Arrays.stream(sorted).sum() / unit);
+        sb.append('\n');
+    }
+
+    private static int nearestRank(double percentile, int count) {
+        return Math.max(0, (int) Math.ceil(percentile / 100 * count) - 1);
+    }
+}
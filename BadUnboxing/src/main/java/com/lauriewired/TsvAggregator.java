@@ -0,0 +1,110 @@
+package com.lauriewired;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.lauriewired.analyzer.AnalysisResult;
+
+/*
+ * Appends one combined_table.tsv row per finished APK. Analysis threads only enqueue rows on a
+ * lock-free queue; a single writer thread drains it about once per FLUSH_INTERVAL_NANOS, or
+ * earlier when WAKE_THRESHOLD rows are waiting, and flushes once per batch. The callback given
+ * with a row runs on the writer thread after the flush that put the row on disk.
+ */
+public class TsvAggregator implements AutoCloseable {
+    public static final String FILE_NAME = "combined_table.tsv";
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int WAKE_THRESHOLD = 256;
+
+    private static class Row {
+        final String text;
+        final Runnable onWritten;
+
+        Row(String text, Runnable onWritten) {
+            this.text = text;
+            this.onWritten = onWritten;
+        }
+    }
+
+    private final Queue<Row> rows = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedRows = new AtomicInteger();
+    private final BufferedWriter writer;
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+
+    public TsvAggregator(String outputRootPath) throws IOException {
+        Path tablePath = Path.of(outputRootPath, FILE_NAME);
+        // A resumed run keeps appending to the table of the previous one
+        boolean writeHeader = !Files.exists(tablePath) || Files.size(tablePath) == 0;
+        writer = Files.newBufferedWriter(tablePath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (writeHeader) {
+            writer.write("apk_file\t" + AnalysisResult.getTsvHeader());
+            writer.flush();
+        }
+
+        writerThread = new Thread(this::writeLoop, "BadUnboxing-tsv-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // onWritten is not called if the row could not be written
+    public void add(String apkFileName, AnalysisResult result, Runnable onWritten) {
+        rows.add(new Row(apkFileName + "\t" + result.getTsvRowRepresentation(), onWritten));
+        if (queuedRows.incrementAndGet() == WAKE_THRESHOLD) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void writeLoop() {
+        List<Runnable> written = new ArrayList<>();
+        while (true) {
+            boolean wasClosed = closed;
+            try {
+                Row row;
+                while ((row = rows.poll()) != null) {
+                    queuedRows.decrementAndGet();
+                    writer.write(row.text);
+                    written.add(row.onWritten);
+                }
+                if (!written.isEmpty()) {
+                    writer.flush();
+                    for (Runnable onWritten : written) {
+                        onWritten.run();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Could not write to " + FILE_NAME + ": " + e.getMessage());
+            }
+            written.clear();
+            if (wasClosed) {
+                // Everything enqueued before close() has been written
+                return;
+            }
+            LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,164 @@
+package com.lauriewired;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.lauriewired.analyzer.AnalysisResult;
+
+/*
+ * Pool of long-lived worker JVMs running AnalysisWorker. Each worker has its own -Xmx, is reused
+ * for many APKs, and is restarted after a fixed number of jobs or when it dies. A worker that is
+ * still busy well past the analysis deadline is killed.
+ */
+public class WorkerProcessPool {
+    // Time on top of the analysis deadline before a worker is considered hung
+    private static final long KILL_GRACE_MILLIS = 60L * 1000;
+
+    private static class Worker {
+        Process process;
+        Writer stdin;
+        BufferedReader stdout;
+        int jobs;
+    }
+
+    private final String outputRootPath;
+    private final BatchOptions options;
+    private final BlockingQueue<Worker> idleWorkers;
+    private final List<Worker> allWorkers = new ArrayList<>();
+    private final ScheduledExecutorService killer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "BadUnboxing-worker-killer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public WorkerProcessPool(String outputRootPath, BatchOptions options) {
+        this.outputRootPath = outputRootPath;
+        this.options = options;
+        this.idleWorkers = new ArrayBlockingQueue<>(options.workerProcesses);
+        for (int i = 0; i < options.workerProcesses; i++) {
+            Worker worker = new Worker();
+            allWorkers.add(worker);
+            idleWorkers.add(worker);
+        }
+    }
+
+    // Returns null if the worker failed, crashed or had to be killed
+    public AnalysisResult analyze(String apkPath) {
+        Worker worker;
+        try {
+            worker = idleWorkers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            return analyze(worker, apkPath);
+        } finally {
+            idleWorkers.add(worker);
+        }
+    }
+
+    private AnalysisResult analyze(Worker worker, String apkPath) {
+        try {
+            if (worker.process == null || !worker.process.isAlive() || worker.jobs >= options.workerMaxJobs) {
+                restart(worker);
+            }
+            worker.jobs++;
+            worker.stdin.write(apkPath + "\n");
+            worker.stdin.flush();
+        } catch (IOException e) {
+            System.err.println("Could not hand " + apkPath + " to a worker process: " + e.getMessage());
+            stop(worker);
+            return null;
+        }
+
+        Process process = worker.process;
+        ScheduledFuture<?> kill = killer.schedule(process::destroyForcibly,
+                options.analysis.timeoutMillis + KILL_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        try {
+            String status = worker.stdout.readLine();
+            StringBuilder representation = new StringBuilder();
+            String line;
+            while ((line = worker.stdout.readLine()) != null && !line.equals(AnalysisWorker.END_MARKER)) {
+                representation.append(line).append("\n");
+            }
+            if (line == null) {
+                // EOF before the end marker, the worker crashed or was killed
+                System.out.println("Worker process died while analyzing " + apkPath);
+                stop(worker);
+                return null;
+            }
+            return AnalysisWorker.STATUS_OK.equals(status)
+                    ? AnalysisResult.fromFileRepresentation(representation.toString())
+                    : null;
+        } catch (IOException e) {
+            System.err.println("Lost connection to worker process analyzing " + apkPath + ": " + e.getMessage());
+            stop(worker);
+            return null;
+        } finally {
+            kill.cancel(false);
+        }
+    }
+
+    private void restart(Worker worker) throws IOException {
+        stop(worker);
+
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-Xmx" + options.workerHeapMb + "m");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(AnalysisWorker.class.getName());
+        command.add(outputRootPath);
+        command.addAll(options.optionArgs);
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        worker.process = builder.start();
+        worker.stdin = new OutputStreamWriter(worker.process.getOutputStream(), StandardCharsets.UTF_8);
+        worker.stdout = new BufferedReader(
+                new InputStreamReader(worker.process.getInputStream(), StandardCharsets.UTF_8));
+        worker.jobs = 0;
+    }
+
+    private void stop(Worker worker) {
+        if (worker.process == null) {
+            return;
+        }
+        try {
+            // Closing stdin lets an idle worker exit on its own
+            worker.stdin.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+        try {
+            if (!worker.process.waitFor(5, TimeUnit.SECONDS)) {
+                worker.process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            worker.process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        worker.process = null;
+    }
+
+    public void shutdown() {
+        for (Worker worker : allWorkers) {
+            stop(worker);
+        }
+        killer.shutdownNow();
+    }
+}
@@ -0,0 +1,7 @@
+package com.lauriewired.analyzer;
+
+public class AnalysisCancelledException extends RuntimeException {
+    public AnalysisCancelledException(String message) {
+        super(message);
+    }
+}
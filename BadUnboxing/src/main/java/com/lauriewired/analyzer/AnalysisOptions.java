@@ -0,0 +1,36 @@
+package com.lauriewired.analyzer;
+
+public class AnalysisOptions {
+    /*
+            SOURCE   - decompile every class to Java and search the source (default)
+            BYTECODE - search method/field/type references and const-strings straight from the
+                       dex instructions, nothing is decompiled for detection
+            LAZY     - use the bytecode search as a pre-filter and decompile only the classes it
+                       flags, whose source then decides; the unpacker generator already
+                       decompiles just the Application subclass and the classes it references
+     */
+    public enum DetectionMode { SOURCE, BYTECODE, LAZY }
+
+    public DetectionMode detectionMode = DetectionMode.SOURCE;
+
+    // Threads scanning the classes of a single APK, 1 scans them on the analysis thread
+    public int scanParallelism = 1;
+
+    // Upper bound for the decompiled code kept in memory per APK
+    public long codeCacheBytes = 256L * 1024 * 1024;
+
+    // Deadline for a single APK, measured from the start of its analysis
+    public long timeoutMillis = 10L * 60 * 1000;
+
+    // Directory of the content-addressed result cache, null disables it
+    public String resultCacheDir = null;
+
+    // Directory of the per-class keyword hit cache (lazy detection only), null disables it
+    public String classCacheDir = null;
+
+    // Write each generated unpacker to <output>/unpackers/<apk name>.java
+    public boolean writeUnpacker = false;
+
+    // When the per-APK log is forced to disk
+    public SimpleLogger.Durability logDurability = SimpleLogger.Durability.CLOSE;
+}
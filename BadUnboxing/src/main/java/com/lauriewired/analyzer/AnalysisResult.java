@@ -18,6 +18,7 @@ public class AnalysisResult {
             dcl_package_name=...
             reflective_package_name=...
             reflective_package_name=...
+            phase_timing=<phase>,<wall ns>,<cpu ns>,<allocated bytes>
             -- optional fields are not shown in table due to their unknown size
      */
 
@@ -32,11 +33,17 @@ public class AnalysisResult {
     public boolean dclInApp = false;
     public List<String> dclPackageNames = new ArrayList<>();
     public List<String> reflectivePackageNames = new ArrayList<>();
+    public List<PhaseTiming> phaseTimings = new ArrayList<>();
 
     public AnalysisResult(String packageName) {
         this.packageName = packageName;
     }
 
+    public static String getTsvHeader() {
+        return "package_name\tapplication_subclass_package_name\tpacker_type\treflection\tdcl"
+                + "\treflection_in_app\tdcl_in_app\n";
+    }
+
     public String getTsvRowRepresentation() {
         StringBuilder sb = new StringBuilder();
         sb.append(packageName);
@@ -105,6 +112,64 @@ public class AnalysisResult {
             sb.append("\n");
         }
 
+        for (PhaseTiming timing : phaseTimings) {
+            sb.append("phase_timing=");
+            sb.append(timing);
+            sb.append("\n");
+        }
+
         return sb.toString();
     }
+
+    // Inverse of getFileRepresentation(), unknown keys are ignored
+    public static AnalysisResult fromFileRepresentation(String representation) {
+        AnalysisResult result = new AnalysisResult(null);
+        for (String line : representation.split("\n")) {
+            int eq = line.indexOf('=');
+            if (eq == -1) {
+                continue;
+            }
+            String key = line.substring(0, eq);
+            String value = line.substring(eq + 1);
+            switch (key) {
+                case "package_name":
+                    result.packageName = nullable(value);
+                    break;
+                case "application_subclass_package_name":
+                    result.applicationSubclassPackageName = nullable(value);
+                    break;
+                case "packer_type":
+                    result.packer = PackerType.valueOf(value);
+                    break;
+                case "reflection":
+                    result.usesReflection = value.equals("YES");
+                    break;
+                case "dcl":
+                    result.usesDcl = value.equals("YES");
+                    break;
+                case "reflection_in_app":
+                    result.reflectionInApp = value.equals("YES");
+                    break;
+                case "dcl_in_app":
+                    result.dclInApp = value.equals("YES");
+                    break;
+                case "reflective_package_name":
+                    result.reflectivePackageNames.add(value);
+                    break;
+                case "dcl_package_name":
+                    result.dclPackageNames.add(value);
+                    break;
+                case "phase_timing":
+                    result.phaseTimings.add(PhaseTiming.parse(value));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return result;
+    }
+
+    private static String nullable(String value) {
+        return value.equals("null") ? null : value;
+    }
 }
@@ -10,25 +10,54 @@ import java.util.List;
 import java.util.Set;
 
 import jadx.api.JadxDecompiler;
+import jadx.api.JavaClass;
 
 public class Analyzer implements Runnable {
     private String apkFilePath;
     private String resultFilePath;
+    // Null unless --write-unpacker
+    private File unpackerFile;
     private String apkFileName;
     private SimpleLogger logger;
+    private AnalysisOptions options;
+    private AnalysisResult result;
+    // Set when the manifest declares no package and the file name stands in for it
+    private boolean packageNameFromFileName = false;
 
     public Analyzer(String apkFilePath, String outputRootPath) {
+        this(apkFilePath, outputRootPath, new AnalysisOptions());
+    }
+
+    public Analyzer(String apkFilePath, String outputRootPath, AnalysisOptions options) {
         this.apkFilePath = apkFilePath;
+        this.options = options;
         this.apkFileName = new File(apkFilePath).getName().replaceAll(".apk$", "");
         String logPath = new File(outputRootPath + "/logs/" + apkFileName + ".txt").toString();
-        this.logger = new SimpleLogger(logPath);
+        this.logger = new SimpleLogger(logPath, options.logDurability);
         this.resultFilePath =
                 new File(outputRootPath + "/results/" + apkFileName + ".txt").toString();
+        this.unpackerFile = options.writeUnpacker
+                ? new File(outputRootPath + "/unpackers/" + apkFileName + ".java")
+                : null;
     }
 
     @Override
     public void run() {
-        AnalysisResult result = analyzeApk();
+        try {
+            runAndWriteResult();
+        } finally {
+            logger.close();
+        }
+    }
+
+    private void runAndWriteResult() {
+        try {
+            result = analyzeApk();
+        } catch (AnalysisCancelledException e) {
+            logger.error(e.getMessage());
+            System.out.println("Task for " + apkFileName + " exceeded its deadline and was terminated.");
+            return;
+        }
 
         try {
             Files.writeString(Path.of(resultFilePath), result.getFileRepresentation(),
@@ -40,15 +69,20 @@ public class Analyzer implements Runnable {
         }
     }
 
-    private List<String> isPacked(String apkFilePath, JadxDecompiler jadx) {
+    // Result of the last run(), null if it did not complete
+    public AnalysisResult getResult() {
+        return result;
+    }
+
+    private List<String> isPacked(MappedApk mappedApk, JadxDecompiler jadx) {
         List<String> packedClasses = new ArrayList<>();
         try {
             // Extract and parse AndroidManifest.xml
             JadxUtils jadxUtils = new JadxUtils(logger);
-            Set<String> manifestClasses = jadxUtils.getManifestClasses(apkFilePath, jadx);
+            Set<String> manifestClasses = jadxUtils.getManifestClasses(mappedApk, jadx);
 
             // Get classes from dex files
-            Set<String> dexClasses = jadxUtils.getDexClasses(apkFilePath, jadx);
+            Set<String> dexClasses = jadxUtils.getDexClasses(mappedApk, jadx);
 
             // Check if there are any classes in the manifest that are not in the dex files
             for (String className : manifestClasses) {
@@ -64,20 +98,128 @@ public class Analyzer implements Runnable {
     }
 
     public AnalysisResult analyzeApk() {
+        // The deadline starts now, not when the driver gets around to checking on this task
+        try (CancellationToken token = new CancellationToken(options.timeoutMillis)) {
+            return analyzeApk(token);
+        }
+    }
+
+    public AnalysisResult analyzeApk(CancellationToken token) {
+        PhaseTimer timer = new PhaseTimer();
+        AnalysisResult result = analyzeApk(token, timer);
+        result.phaseTimings = timer.getTimings();
+        for (PhaseTiming timing : result.phaseTimings) {
+            logger.log(String.format("Phase %s: wall=%dms cpu=%dms allocated=%dMB", timing.phase,
+                    timing.wallNanos / 1_000_000, timing.cpuNanos / 1_000_000,
+                    timing.allocatedBytes / (1024 * 1024)));
+        }
+        return result;
+    }
+
+    private AnalysisResult analyzeApk(CancellationToken token, PhaseTimer timer) {
+        ResultCache resultCache = null;
+        String cacheKey = null;
+        if (options.resultCacheDir != null) {
+            try {
+                cacheKey = ResultCache.key(apkFilePath, options);
+                resultCache = new ResultCache(options.resultCacheDir);
+                AnalysisResult cached = resultCache.get(cacheKey);
+                timer.lap("result_cache");
+                if (cached != null) {
+                    logger.log("Result cache hit for " + cacheKey);
+                    return cached;
+                }
+            } catch (IOException e) {
+                logger.error("Could not compute result cache key: " + e.getMessage());
+            }
+        }
+
+        AnalysisResult result = loadAndAnalyzeApk(token, timer);
+        // Stored with the timings of this run, a later cache hit replaces them with its own
+        result.phaseTimings = timer.getTimings();
+
+        // The key only covers the APK content, a result depending on the file name must not be shared
+        if (resultCache != null && !packageNameFromFileName) {
+            try {
+                resultCache.put(cacheKey, result);
+            } catch (IOException e) {
+                logger.error("Could not store result in cache: " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private AnalysisResult loadAndAnalyzeApk(CancellationToken token, PhaseTimer timer) {
         JadxUtils jadxUtils = new JadxUtils(logger);
-        JadxDecompiler jadx = jadxUtils.loadJadx(apkFilePath);
+        JadxDecompiler jadx = jadxUtils.createJadx(apkFilePath);
+        /*
+         * jadx ignores interrupts, closing it is the only way to cut a stuck load or decompilation
+         * short, so this is registered before the load. It is best effort: closing frees what jadx
+         * holds, but a thread stuck inside jadx code is not reclaimed. BatchScheduler gives up on it
+         * after a grace period and hands its slot to the next APK; only killing a worker process
+         * (--worker-processes) reclaims the thread as well.
+         */
+        token.onCancel(jadx::close);
+        CodeCache codeCache = new CodeCache(options.codeCacheBytes);
+        MappedApk mappedApk = null;
+        try {
+            jadxUtils.load(jadx);
+            timer.lap("load");
+            mappedApk = openMappedApk();
+            return analyzeLoadedApk(jadx, mappedApk, codeCache, token, timer);
+        } catch (RuntimeException e) {
+            // Whatever jadx throws after being closed underneath us is just the cancellation
+            if (token.isCancelled() && !(e instanceof AnalysisCancelledException)) {
+                throw new AnalysisCancelledException("Analysis was cancelled: " + e);
+            }
+            throw e;
+        } finally {
+            codeCache.clear();
+            jadx.close();
+            closeMappedApk(mappedApk);
+        }
+    }
+
+    // null if the APK can't be mapped, e.g. a bare dex file or a zip64 archive
+    private MappedApk openMappedApk() {
+        try {
+            return MappedApk.open(apkFilePath);
+        } catch (IOException e) {
+            logger.log("Reading APK entries through jadx: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void closeMappedApk(MappedApk mappedApk) {
+        if (mappedApk == null) {
+            return;
+        }
+        try {
+            mappedApk.close();
+        } catch (IOException e) {
+            logger.error("Could not close " + apkFilePath + ": " + e.getMessage());
+        }
+    }
+
+    private AnalysisResult analyzeLoadedApk(JadxDecompiler jadx, MappedApk mappedApk, CodeCache codeCache,
+            CancellationToken token, PhaseTimer timer) {
+        token.checkpoint();
         String packageName = jadx.getRoot().getAppPackage();
         if (packageName == null) {
             packageName = apkFileName;
+            packageNameFromFileName = true;
         }
         
         logger.log("Loading APK:" + packageName);
         AnalysisResult result = new AnalysisResult(packageName);
 
         // sets the applicationSubclassPackageName field, must be run before dcl/reflection detection
-        JadxUtils.findApplicationSubclass(jadx, logger, result);
+        ClassIndex classIndex = ClassIndex.build(jadx);
+        JavaClass applicationClass = JadxUtils.findApplicationSubclass(classIndex, logger, result);
+        timer.lap("application_subclass");
 
-        List<String> packedClasses = isPacked(apkFilePath, jadx);
+        token.checkpoint();
+        List<String> packedClasses = isPacked(mappedApk, jadx);
         if (packedClasses.isEmpty()) {
             logger.log("APK is not packed");
             // return;
@@ -91,9 +233,15 @@ public class Analyzer implements Runnable {
             logger.log(className);
         }
         logger.log("[END_LIST] Missing classes in dex");
+        timer.lap("is_packed");
 
-        DynamicDexLoaderDetection dclDetect = new DynamicDexLoaderDetection(logger, result);
-        List<String> dclPackageNames = dclDetect.getDclPackages(jadx);
+        // Single pass over all classes for both the DCL and reflection keywords
+        token.checkpoint();
+        KeywordDetection keywordDetection = new KeywordDetection(logger, result, options, codeCache, token);
+        keywordDetection.scan(jadx, mappedApk);
+        timer.lap("keyword_scan");
+
+        List<String> dclPackageNames = keywordDetection.getDclPackages();
         if (dclPackageNames.isEmpty()) {
             logger.log("Packer Type:Native");
             result.packer = AnalysisResult.PackerType.NATIVE;
@@ -110,13 +258,17 @@ public class Analyzer implements Runnable {
             result.dclPackageNames = dclPackageNames;
         }
 
-        UnpackerGenerator gen = new UnpackerGenerator(logger, result);
-        ApkAnalysisDetails apkAnalysisDetails = gen.generateJava(jadx, apkFilePath);
+        token.checkpoint();
+        UnpackerGenerator gen = new UnpackerGenerator(logger, result, codeCache, token, classIndex);
+        gen.unpackerFile = unpackerFile;
+        ApkAnalysisDetails apkAnalysisDetails = gen.generateJava(jadx, apkFilePath, applicationClass);
+        timer.lap("unpacker_generation");
+        token.checkpoint();
         if (apkAnalysisDetails.getBaseDir() == null) {
             logger.error("Error generating Java unpacker code.");
         }
 
-        List<String> reflectivePackageNames = ReflectionRemover.getReflectivePackages(jadx, logger, result);
+        List<String> reflectivePackageNames = keywordDetection.getReflectivePackages();
         if (!reflectivePackageNames.isEmpty()) {
             logger.log("[BEGIN_LIST] Package names using reflection");
             for (String detail : reflectivePackageNames) {
@@ -126,6 +278,8 @@ public class Analyzer implements Runnable {
             result.reflectivePackageNames = reflectivePackageNames;
         }
 
+        logger.log("Code cache: " + codeCache.getStatistics());
+
         return result;
     }
 }
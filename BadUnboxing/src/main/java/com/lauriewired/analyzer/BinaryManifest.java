@@ -0,0 +1,165 @@
+package com.lauriewired.analyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Reads the component class names out of a compiled AndroidManifest.xml without decoding it to
+ * text first. Produces the same names as JadxUtils.getManifestClasses does from jadx's output.
+ */
+public class BinaryManifest {
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+    private static final int ATTR_NAME_RESOURCE_ID = 0x01010003;
+
+    private static final int RES_STRING_POOL_TYPE = 0x0001;
+    private static final int RES_XML_TYPE = 0x0003;
+    private static final int RES_XML_START_ELEMENT_TYPE = 0x0102;
+    private static final int RES_XML_RESOURCE_MAP_TYPE = 0x0180;
+    private static final int UTF8_FLAG = 1 << 8;
+    private static final int TYPE_STRING = 0x03;
+
+    private static final Set<String> COMPONENT_TAGS =
+            new HashSet<>(Arrays.asList("activity", "service", "receiver", "provider"));
+
+    private final ByteBuffer xml;
+    private int stringPoolOffset = -1;
+    private String[] strings = new String[0];
+    private int[] resourceIds = new int[0];
+
+    private BinaryManifest(ByteBuffer xml) {
+        this.xml = xml.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static Set<String> getComponentClasses(ByteBuffer manifest) {
+        return new BinaryManifest(manifest).componentClasses();
+    }
+
+    private Set<String> componentClasses() {
+        if ((xml.getShort(0) & 0xFFFF) != RES_XML_TYPE) {
+            throw new IllegalArgumentException("Not a binary XML file");
+        }
+        Set<String> classNames = new HashSet<>();
+        int end = Math.min(xml.limit(), xml.getInt(4));
+        int pos = xml.getShort(2) & 0xFFFF;
+        while (pos + 8 <= end) {
+            int type = xml.getShort(pos) & 0xFFFF;
+            int size = xml.getInt(pos + 4);
+            if (size < 8) {
+                throw new IllegalArgumentException("Bad chunk size " + size + " at " + pos);
+            }
+            switch (type) {
+                case RES_STRING_POOL_TYPE:
+                    readStringPool(pos);
+                    break;
+                case RES_XML_RESOURCE_MAP_TYPE:
+                    resourceIds = new int[(size - 8) / 4];
+                    for (int i = 0; i < resourceIds.length; i++) {
+                        resourceIds[i] = xml.getInt(pos + 8 + 4 * i);
+                    }
+                    break;
+                case RES_XML_START_ELEMENT_TYPE:
+                    String className = componentName(pos);
+                    if (className != null) {
+                        classNames.add(className.replace(".", "/") + ".class");
+                    }
+                    break;
+                default:
+                    break;
+            }
+            pos += size;
+        }
+        return classNames;
+    }
+
+    // android:name of an activity/service/receiver/provider element, null for anything else
+    private String componentName(int element) {
+        String tag = string(xml.getInt(element + 20));
+        if (!COMPONENT_TAGS.contains(tag)) {
+            return null;
+        }
+        int attributeStart = xml.getShort(element + 24) & 0xFFFF;
+        int attributeSize = xml.getShort(element + 26) & 0xFFFF;
+        int attributeCount = xml.getShort(element + 28) & 0xFFFF;
+        for (int i = 0; i < attributeCount; i++) {
+            int attr = element + 16 + attributeStart + i * attributeSize;
+            int nameIndex = xml.getInt(attr + 4);
+            if (!isAndroidName(xml.getInt(attr), nameIndex)) {
+                continue;
+            }
+            int rawValue = xml.getInt(attr + 8);
+            if (rawValue >= 0) {
+                return string(rawValue);
+            }
+            if ((xml.get(attr + 15) & 0xFF) == TYPE_STRING) {
+                return string(xml.getInt(attr + 16));
+            }
+        }
+        return null;
+    }
+
+    private boolean isAndroidName(int namespaceIndex, int nameIndex) {
+        // Obfuscators blank out attribute names, the resource id is what the platform goes by
+        if (nameIndex >= 0 && nameIndex < resourceIds.length && resourceIds[nameIndex] != 0) {
+            return resourceIds[nameIndex] == ATTR_NAME_RESOURCE_ID;
+        }
+        return "name".equals(string(nameIndex)) && ANDROID_NS.equals(string(namespaceIndex));
+    }
+
+    private void readStringPool(int pool) {
+        // Only the first pool is the document's string pool
+        if (stringPoolOffset != -1) {
+            return;
+        }
+        stringPoolOffset = pool;
+        strings = new String[xml.getInt(pool + 8)];
+    }
+
+    private String string(int index) {
+        if (index < 0 || index >= strings.length) {
+            return null;
+        }
+        if (strings[index] == null) {
+            strings[index] = decodeString(index);
+        }
+        return strings[index];
+    }
+
+    private String decodeString(int index) {
+        int pool = stringPoolOffset;
+        int headerSize = xml.getShort(pool + 2) & 0xFFFF;
+        boolean utf8 = (xml.getInt(pool + 16) & UTF8_FLAG) != 0;
+        int stringsStart = pool + xml.getInt(pool + 20);
+        int pos = stringsStart + xml.getInt(pool + headerSize + 4 * index);
+
+        if (utf8) {
+            // Length in UTF-16 units, then in bytes, each one or two bytes long
+            pos += (xml.get(pos) & 0x80) != 0 ? 2 : 1;
+            int length = xml.get(pos) & 0xFF;
+            if ((length & 0x80) != 0) {
+                length = ((length & 0x7F) << 8) | (xml.get(pos + 1) & 0xFF);
+                pos += 2;
+            } else {
+                pos += 1;
+            }
+            byte[] bytes = new byte[length];
+            xml.get(pos, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int length = xml.getShort(pos) & 0xFFFF;
+        pos += 2;
+        if ((length & 0x8000) != 0) {
+            length = ((length & 0x7FFF) << 16) | (xml.getShort(pos) & 0xFFFF);
+            pos += 2;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = xml.getChar(pos + 2 * i);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,95 @@
+package com.lauriewired.analyzer;
+
+import java.util.function.Consumer;
+
+import jadx.api.plugins.input.data.ICodeReader;
+import jadx.api.plugins.input.data.IFieldRef;
+import jadx.api.plugins.input.data.IMethodRef;
+import jadx.api.plugins.input.insns.InsnData;
+import jadx.api.plugins.input.insns.Opcode;
+import jadx.core.dex.instructions.args.ArgType;
+import jadx.core.dex.nodes.ClassNode;
+import jadx.core.dex.nodes.FieldNode;
+import jadx.core.dex.nodes.MethodNode;
+
+/*
+ * Walks the raw dex instructions of a class (and its inner classes) and reports every name the
+ * decompiled source would mention: class, field and method names, the types in field and method
+ * signatures, referenced types and members (with the prototypes of called methods), and
+ * const-strings. Nothing here triggers Java decompilation.
+ */
+public class BytecodeReferences {
+
+    private BytecodeReferences() {
+    }
+
+    public static void visit(ClassNode cls, Consumer<String> consumer) {
+        consumer.accept(cls.getFullName());
+        visitType(cls.getSuperClass(), consumer);
+        for (ArgType iface : cls.getInterfaces()) {
+            visitType(iface, consumer);
+        }
+        for (FieldNode field : cls.getFields()) {
+            consumer.accept(field.getName());
+            visitType(field.getType(), consumer);
+        }
+        for (MethodNode mth : cls.getMethods()) {
+            consumer.accept(mth.getName());
+            for (ArgType argType : mth.getArgTypes()) {
+                visitType(argType, consumer);
+            }
+            visitType(mth.getReturnType(), consumer);
+            ICodeReader codeReader = mth.getCodeReader();
+            if (codeReader != null) {
+                codeReader.visitInstructions(insn -> visitInsn(insn, consumer));
+            }
+        }
+        for (ClassNode inner : cls.getInnerClasses()) {
+            visit(inner, consumer);
+        }
+    }
+
+    private static void visitInsn(InsnData insn, Consumer<String> consumer) {
+        if (insn.getOpcode() == Opcode.UNKNOWN) {
+            return;
+        }
+        switch (insn.getIndexType()) {
+            case STRING_REF:
+                insn.decode();
+                consumer.accept(insn.getIndexAsString());
+                break;
+            case TYPE_REF:
+                insn.decode();
+                consumer.accept(insn.getIndexAsType());
+                break;
+            case FIELD_REF: {
+                insn.decode();
+                IFieldRef fieldRef = insn.getIndexAsField();
+                consumer.accept(fieldRef.getParentClassType());
+                consumer.accept(fieldRef.getName());
+                consumer.accept(fieldRef.getType());
+                break;
+            }
+            case METHOD_REF: {
+                insn.decode();
+                IMethodRef methodRef = insn.getIndexAsMethod();
+                methodRef.load();
+                consumer.accept(methodRef.getParentClassType());
+                consumer.accept(methodRef.getName());
+                consumer.accept(methodRef.getReturnType());
+                for (String argType : methodRef.getArgTypes()) {
+                    consumer.accept(argType);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private static void visitType(ArgType type, Consumer<String> consumer) {
+        if (type != null) {
+            consumer.accept(type.toString());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.lauriewired.analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Deadline of a single APK analysis, measured from when the analysis started. jadx does not react
+ * to interrupts, so the analysis polls checkpoint() between phases and classes instead. When the
+ * deadline passes, the registered cancel actions run on a watchdog thread (e.g. closing the
+ * JadxDecompiler). That releases what jadx holds even while the worker is stuck inside a single
+ * decompilation, but not the worker thread itself: it only stops once jadx fails or returns.
+ */
+public class CancellationToken implements AutoCloseable {
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "BadUnboxing-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long timeoutMillis;
+    private final long deadlineNanos;
+    private final ScheduledFuture<?> timer;
+    private final List<Runnable> cancelActions = new ArrayList<>();
+    private volatile boolean cancelled = false;
+
+    public CancellationToken(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.timer = watchdog.schedule(this::cancel, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void checkpoint() {
+        if (cancelled || System.nanoTime() - deadlineNanos > 0) {
+            throw new AnalysisCancelledException("Analysis exceeded " + timeoutMillis + " ms and was cancelled");
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        List<Runnable> actions;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            actions = new ArrayList<>(cancelActions);
+            cancelActions.clear();
+        }
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (Exception e) {
+                // The worker is being torn down anyway
+            }
+        }
+    }
+
+    // Runs the action when the token is cancelled, or right away if it already is
+    public void onCancel(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancelActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    @Override
+    public void close() {
+        timer.cancel(false);
+        synchronized (this) {
+            cancelActions.clear();
+        }
+    }
+}
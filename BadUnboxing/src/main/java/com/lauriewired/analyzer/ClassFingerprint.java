@@ -0,0 +1,226 @@
+package com.lauriewired.analyzer;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+import jadx.api.plugins.input.data.ICatch;
+import jadx.api.plugins.input.data.ICodeReader;
+import jadx.api.plugins.input.data.IDebugInfo;
+import jadx.api.plugins.input.data.IFieldRef;
+import jadx.api.plugins.input.data.ILocalVar;
+import jadx.api.plugins.input.data.IMethodRef;
+import jadx.api.plugins.input.data.ITry;
+import jadx.api.plugins.input.data.annotations.EncodedValue;
+import jadx.api.plugins.input.data.annotations.IAnnotation;
+import jadx.api.plugins.input.data.attributes.JadxAttrType;
+import jadx.api.plugins.input.data.attributes.types.AnnotationsAttr;
+import jadx.api.plugins.input.insns.InsnData;
+import jadx.api.plugins.input.insns.Opcode;
+import jadx.api.plugins.input.insns.custom.IArrayPayload;
+import jadx.api.plugins.input.insns.custom.ICustomPayload;
+import jadx.api.plugins.input.insns.custom.ISwitchPayload;
+import jadx.core.dex.attributes.AttrNode;
+import jadx.core.dex.instructions.args.ArgType;
+import jadx.core.dex.nodes.ClassNode;
+import jadx.core.dex.nodes.FieldNode;
+import jadx.core.dex.nodes.MethodNode;
+
+/*
+ * SHA-256 over the dex-level content of a class and its inner classes: names, access flags,
+ * annotations, supertypes, fields, method signatures, and per method every instruction with its
+ * operands (method references with their prototype), switch and array payloads, try/catch blocks
+ * and debug local variables.
+ *
+ * This is not a guarantee that two classes decompile to the same code. jadx also draws on other
+ * classes, e.g. it inlines synthetic lambda and accessor classes and constants of other classes,
+ * none of which is part of the hash. Results keyed by it are an approximation, which is why
+ * ClassHitCache is only used by lazy detection and never by source detection.
+ */
+public class ClassFingerprint {
+
+    private ClassFingerprint() {
+    }
+
+    public static String compute(ClassNode cls, String salt) {
+        MessageDigest digest = HashUtils.newSha256();
+        update(digest, salt);
+        updateClass(digest, cls);
+        return HashUtils.toHex(digest.digest());
+    }
+
+    private static void updateClass(MessageDigest digest, ClassNode cls) {
+        update(digest, cls.getRawName());
+        updateInt(digest, cls.getAccessFlags().rawValue());
+        updateAnnotations(digest, cls);
+        updateType(digest, cls.getSuperClass());
+        for (ArgType iface : cls.getInterfaces()) {
+            updateType(digest, iface);
+        }
+        for (FieldNode field : cls.getFields()) {
+            update(digest, field.getName());
+            updateInt(digest, field.getAccessFlags().rawValue());
+            updateAnnotations(digest, field);
+            updateType(digest, field.getType());
+        }
+        for (MethodNode mth : cls.getMethods()) {
+            update(digest, mth.getMethodInfo().getShortId());
+            updateInt(digest, mth.getAccessFlags().rawValue());
+            updateAnnotations(digest, mth);
+            ICodeReader codeReader = mth.getCodeReader();
+            if (codeReader != null) {
+                codeReader.visitInstructions(insn -> updateInsn(digest, insn));
+                updateTries(digest, codeReader);
+                updateDebugInfo(digest, codeReader.getDebugInfo());
+            }
+        }
+        for (ClassNode inner : cls.getInnerClasses()) {
+            updateClass(digest, inner);
+        }
+    }
+
+    private static void updateInsn(MessageDigest digest, InsnData insn) {
+        Opcode opcode = insn.getOpcode();
+        update(digest, opcode.name());
+        if (opcode == Opcode.UNKNOWN) {
+            return;
+        }
+        insn.decode();
+        ICustomPayload payload = insn.getPayload();
+        if (payload != null) {
+            updatePayload(digest, payload);
+            return;
+        }
+        for (int i = 0; i < insn.getRegsCount(); i++) {
+            updateInt(digest, insn.getReg(i));
+        }
+        switch (insn.getIndexType()) {
+            case STRING_REF:
+                update(digest, insn.getIndexAsString());
+                break;
+            case TYPE_REF:
+                update(digest, insn.getIndexAsType());
+                break;
+            case FIELD_REF: {
+                IFieldRef fieldRef = insn.getIndexAsField();
+                update(digest, fieldRef.getParentClassType());
+                update(digest, fieldRef.getName());
+                update(digest, fieldRef.getType());
+                break;
+            }
+            case METHOD_REF: {
+                IMethodRef methodRef = insn.getIndexAsMethod();
+                methodRef.load();
+                update(digest, methodRef.getParentClassType());
+                update(digest, methodRef.getName());
+                update(digest, methodRef.getReturnType());
+                for (String argType : methodRef.getArgTypes()) {
+                    update(digest, argType);
+                }
+                break;
+            }
+            default:
+                updateLong(digest, insn.getLiteral());
+                break;
+        }
+    }
+
+    // Switch keys and targets, or the elements of a fill-array-data
+    private static void updatePayload(MessageDigest digest, ICustomPayload payload) {
+        if (payload instanceof ISwitchPayload) {
+            ISwitchPayload switchPayload = (ISwitchPayload) payload;
+            for (int i = 0; i < switchPayload.getSize(); i++) {
+                updateInt(digest, switchPayload.getKeys()[i]);
+                updateInt(digest, switchPayload.getTargets()[i]);
+            }
+        } else if (payload instanceof IArrayPayload) {
+            IArrayPayload arrayPayload = (IArrayPayload) payload;
+            updateInt(digest, arrayPayload.getElementSize());
+            updateArray(digest, arrayPayload.getData());
+        }
+    }
+
+    private static void updateArray(MessageDigest digest, Object data) {
+        if (data instanceof byte[]) {
+            digest.update((byte[]) data);
+        } else if (data instanceof short[]) {
+            for (short value : (short[]) data) {
+                updateInt(digest, value);
+            }
+        } else if (data instanceof int[]) {
+            for (int value : (int[]) data) {
+                updateInt(digest, value);
+            }
+        } else if (data instanceof long[]) {
+            for (long value : (long[]) data) {
+                updateLong(digest, value);
+            }
+        }
+    }
+
+    private static void updateTries(MessageDigest digest, ICodeReader codeReader) {
+        for (ITry tryBlock : codeReader.getTries()) {
+            updateInt(digest, tryBlock.getStartOffset());
+            updateInt(digest, tryBlock.getEndOffset());
+            ICatch catchBlock = tryBlock.getCatch();
+            for (String type : catchBlock.getTypes()) {
+                update(digest, type);
+            }
+            for (int handler : catchBlock.getHandlers()) {
+                updateInt(digest, handler);
+            }
+            updateInt(digest, catchBlock.getCatchAllHandler());
+        }
+    }
+
+    // Local variable names and types end up in the decompiled code
+    private static void updateDebugInfo(MessageDigest digest, IDebugInfo debugInfo) {
+        if (debugInfo == null) {
+            return;
+        }
+        for (ILocalVar var : debugInfo.getLocalVars()) {
+            update(digest, var.getName());
+            update(digest, var.getType());
+            update(digest, var.getSignature());
+            updateInt(digest, var.getRegNum());
+        }
+    }
+
+    private static void updateAnnotations(MessageDigest digest, AttrNode node) {
+        AnnotationsAttr annotations = node.get(JadxAttrType.ANNOTATION_LIST);
+        if (annotations == null) {
+            return;
+        }
+        for (IAnnotation annotation : annotations.getAll()) {
+            update(digest, annotation.getAnnotationClass());
+            for (Map.Entry<String, EncodedValue> value : annotation.getValues().entrySet()) {
+                update(digest, value.getKey());
+                update(digest, String.valueOf(value.getValue()));
+            }
+        }
+    }
+
+    private static void updateType(MessageDigest digest, ArgType type) {
+        update(digest, type == null ? "" : type.toString());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // Separator so that ("ab", "c") and ("a", "bc") hash differently
+        digest.update((byte) 0);
+    }
+
+    private static void updateInt(MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    private static void updateLong(MessageDigest digest, long value) {
+        updateInt(digest, (int) (value >>> 32));
+        updateInt(digest, (int) value);
+    }
+}
@@ -0,0 +1,167 @@
+package com.lauriewired.analyzer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Persistent keyword hits per class, keyed by ClassFingerprint. Shared SDK classes are
+ * byte-identical across thousands of APKs, so after the first APK they are never decompiled
+ * for keyword detection again. One instance per directory is shared by all analyses of a
+ * process. Only lazy detection uses it, see ClassFingerprint for why source detection doesn't.
+ *
+ * All processes share one file. New entries are appended at flush() while holding an exclusive
+ * lock on it, so worker processes never interleave partial lines. Processes analyzing the same
+ * class at the same time both append it; once duplicates make up more than half of the file it
+ * is compacted on open, under the same lock.
+ *
+ * The entries live for the whole process and outside the BatchScheduler heap budget, so at most
+ * MAX_ENTRIES (about 160 bytes each, 32 MB in total) are kept; hits of classes beyond that are
+ * neither cached nor written and simply recomputed. Compaction drops them from the file as well.
+ *
+ *      class_hits.tsv: <fingerprint>\t<keyword bitmask, 16 hex digits>\n
+ */
+public class ClassHitCache {
+    public static final String FILE_NAME = "class_hits.tsv";
+    private static final int MAX_ENTRIES = 200_000;
+    private static final int MASK_HEX_LENGTH = 16;
+
+    private static final Map<String, ClassHitCache> openCaches = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> hits = new ConcurrentHashMap<>();
+    private final Path file;
+    // Entries put since the last flush
+    private final StringBuilder unwritten = new StringBuilder();
+
+    private ClassHitCache(Path cacheDir) throws IOException {
+        Files.createDirectories(cacheDir);
+        file = cacheDir.resolve(FILE_NAME);
+        try (FileChannel channel = openChannel(); FileLock lock = channel.lock()) {
+            int lines = load(read(channel));
+            if (lines > 2 * hits.size()) {
+                compact(channel);
+            }
+        }
+    }
+
+    public static ClassHitCache open(String cacheDir) throws IOException {
+        try {
+            return openCaches.computeIfAbsent(cacheDir, dir -> {
+                try {
+                    return new ClassHitCache(Path.of(dir));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static String read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) != -1) {
+            // Keep reading until the buffer is full
+        }
+        buffer.flip();
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    // Returns the number of complete lines, well-formed or not
+    private int load(String content) {
+        // A crash may have left a partial last line behind, only newline-terminated lines count
+        int end = content.lastIndexOf('\n');
+        if (end == -1) {
+            return 0;
+        }
+        String[] lines = content.substring(0, end + 1).split("\n");
+        for (String line : lines) {
+            if (hits.size() >= MAX_ENTRIES) {
+                break;
+            }
+            int tab = line.indexOf('\t');
+            // An append after a crash may have joined a partial line, the fixed mask width rejects it
+            if (tab <= 0 || line.length() - tab - 1 != MASK_HEX_LENGTH) {
+                continue;
+            }
+            try {
+                hits.putIfAbsent(line.substring(0, tab), Long.parseUnsignedLong(line.substring(tab + 1), 16));
+            } catch (NumberFormatException e) {
+                // Not a hex mask
+            }
+        }
+        return lines.length;
+    }
+
+    // Rewrites the locked file with the loaded entries; a crash meanwhile only loses cached hits
+    private void compact(FileChannel channel) throws IOException {
+        StringBuilder content = new StringBuilder(hits.size() * (64 + MASK_HEX_LENGTH + 2));
+        for (Map.Entry<String, Long> entry : hits.entrySet()) {
+            appendLine(content, entry.getKey(), entry.getValue());
+        }
+        channel.truncate(0);
+        write(channel, content, 0);
+    }
+
+    private static void appendLine(StringBuilder text, String fingerprint, long found) {
+        text.append(fingerprint).append('\t').append(String.format("%016x", found)).append('\n');
+    }
+
+    private static void write(FileChannel channel, CharSequence text, long position) throws IOException {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(text.toString());
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    // Returns null if the class has not been seen before
+    public Long get(String fingerprint) {
+        return hits.get(fingerprint);
+    }
+
+    public void put(String fingerprint, long found) {
+        if (hits.size() >= MAX_ENTRIES || hits.putIfAbsent(fingerprint, found) != null) {
+            return;
+        }
+        synchronized (unwritten) {
+            appendLine(unwritten, fingerprint, found);
+        }
+    }
+
+    // Appends the entries put since the last flush; synchronized as a process may hold the lock only once
+    public synchronized void flush() {
+        String text;
+        synchronized (unwritten) {
+            text = unwritten.toString();
+            unwritten.setLength(0);
+        }
+        if (text.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = openChannel(); FileLock lock = channel.lock()) {
+            long size = channel.size();
+            if (size > 0) {
+                // Start on a line of its own after a partial line left by a crash
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, size - 1);
+                if (last.get(0) != '\n') {
+                    text = "\n" + text;
+                }
+            }
+            write(channel, text, size);
+        } catch (IOException e) {
+            // Entries that did not make it to disk are recomputed next run
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.lauriewired.analyzer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import jadx.api.JadxDecompiler;
+import jadx.api.JavaClass;
+
+/*
+ * Lookup tables over the classes of one loaded APK, built with a single pass over
+ * jadx.getClasses(). Lists keep the jadx class order so lookups return the same class a linear
+ * scan would have found first.
+ */
+public class ClassIndex {
+    private final List<JavaClass> classes;
+    private final Map<String, JavaClass> byName = new HashMap<>();
+    private final Map<String, List<JavaClass>> byPackage = new HashMap<>();
+    // Superclass name (as jadx prints the type) to its direct subclasses in this APK
+    private final Map<String, List<JavaClass>> subclasses = new HashMap<>();
+
+    private ClassIndex(List<JavaClass> classes) {
+        this.classes = classes;
+        for (JavaClass cls : classes) {
+            byName.putIfAbsent(cls.getFullName(), cls);
+            byName.putIfAbsent(cls.getRawName(), cls);
+            byPackage.computeIfAbsent(cls.getPackage(), p -> new ArrayList<>()).add(cls);
+            var superClass = cls.getClassNode().getSuperClass();
+            if (superClass != null) {
+                subclasses.computeIfAbsent(superClass.toString(), s -> new ArrayList<>()).add(cls);
+            }
+        }
+    }
+
+    public static ClassIndex build(JadxDecompiler jadx) {
+        return new ClassIndex(jadx.getClasses());
+    }
+
+    public List<JavaClass> getClasses() {
+        return classes;
+    }
+
+    // Full or raw name, null if the class is not in the APK
+    public JavaClass getClassByName(String className) {
+        return byName.get(className);
+    }
+
+    public List<JavaClass> getClassesInPackage(String packageName) {
+        return byPackage.getOrDefault(packageName, Collections.emptyList());
+    }
+
+    public List<JavaClass> getDirectSubclasses(String superClassName) {
+        return subclasses.getOrDefault(superClassName, Collections.emptyList());
+    }
+
+    /*
+     * Subclasses of superClassName at any depth, nearest first. Classes at the same depth are
+     * in jadx class order.
+     */
+    public List<JavaClass> getSubclasses(String superClassName) {
+        Set<JavaClass> found = new LinkedHashSet<>();
+        Queue<JavaClass> queue = new ArrayDeque<>(getDirectSubclasses(superClassName));
+        while (!queue.isEmpty()) {
+            JavaClass cls = queue.remove();
+            if (!found.add(cls)) {
+                continue;
+            }
+            queue.addAll(getDirectSubclasses(cls.getFullName()));
+            if (!cls.getRawName().equals(cls.getFullName())) {
+                queue.addAll(getDirectSubclasses(cls.getRawName()));
+            }
+        }
+        return new ArrayList<>(found);
+    }
+}
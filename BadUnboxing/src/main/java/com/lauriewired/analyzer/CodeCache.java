@@ -0,0 +1,94 @@
+package com.lauriewired.analyzer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jadx.api.JavaClass;
+
+/*
+ * Decompiled code of one APK, shared by every analysis phase. jadx itself is loaded with a no-op
+ * code cache (see JadxUtils.createJadx), so this is the only place decompiled source is retained.
+ * Entries are evicted least-recently-used once the total size of the cached code goes over the
+ * configured budget; an evicted class is simply decompiled again on its next use.
+ */
+public class CodeCache {
+    private final long maxBytes;
+    private final LinkedHashMap<JavaClass, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    private long hits;
+    private long misses;
+    private long reloads;
+    private long evictions;
+
+    public CodeCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public String getCode(JavaClass javaClass) {
+        synchronized (this) {
+            String code = entries.get(javaClass);
+            if (code != null) {
+                hits++;
+                return code;
+            }
+            misses++;
+        }
+        // Decompile outside the lock so classes can be decompiled concurrently
+        String code = javaClass.getCode();
+        put(javaClass, code);
+        return code;
+    }
+
+    // Decompiles the class again, e.g. after its methods or fields have been renamed
+    public String reload(JavaClass javaClass) {
+        synchronized (this) {
+            remove(javaClass);
+            reloads++;
+        }
+        String code = javaClass.getClassNode().reloadCode().getCodeStr();
+        put(javaClass, code);
+        return code;
+    }
+
+    private synchronized void put(JavaClass javaClass, String code) {
+        remove(javaClass);
+        long size = weight(code);
+        if (size > maxBytes) {
+            // Would evict everything else and still not fit
+            return;
+        }
+        entries.put(javaClass, code);
+        cachedBytes += size;
+
+        Iterator<Map.Entry<JavaClass, String>> it = entries.entrySet().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<JavaClass, String> eldest = it.next();
+            cachedBytes -= weight(eldest.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(JavaClass javaClass) {
+        String old = entries.remove(javaClass);
+        if (old != null) {
+            cachedBytes -= weight(old);
+        }
+    }
+
+    private static long weight(String code) {
+        return 2L * code.length();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        cachedBytes = 0;
+    }
+
+    public synchronized String getStatistics() {
+        return String.format("hits=%d misses=%d reloads=%d evictions=%d cached_classes=%d cached_bytes=%d",
+                hits, misses, reloads, evictions, entries.size(), cachedBytes);
+    }
+}
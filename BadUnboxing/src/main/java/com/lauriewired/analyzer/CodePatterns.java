@@ -0,0 +1,89 @@
+package com.lauriewired.analyzer;
+
+import java.util.regex.Pattern;
+
+/*
+ * Every regular expression the code rewriters use, compiled once. Patterns are immutable and
+ * shared by all analyses; only their Matchers are per use. Line-anchored patterns use (?m), so
+ * they work the same on a single line and on a whole class.
+ */
+public final class CodePatterns {
+    private CodePatterns() {
+    }
+
+    // Declarations
+
+    public static final Pattern PACKAGE_DECLARATION = Pattern.compile("(?m)^package\\s+.*?;");
+    public static final Pattern IMPORT_STATEMENT = Pattern.compile("(?m)^import\\s+.*?;");
+    // group 1 is the imported class
+    public static final Pattern IMPORTED_CLASS = Pattern.compile("import\\s+([\\w\\.]+);");
+
+    // Everything from one package declaration up to the next, group 2 is the package name
+    public static final Pattern PACKAGE_BLOCK = Pattern.compile(
+            "(package\\s+([\\w\\.]+);).*?(?=package\\s+[\\w\\.]+;|$)", Pattern.DOTALL);
+    // Name of a class other than the dummy Application and Context classes
+    public static final Pattern CLASS_NAME =
+            Pattern.compile("\\s+class\\s+(?!Application\\b|Context\\b)(\\w+)\\s+\\{");
+
+    // Method signatures up to the opening brace of the body, group 2 is the name, group 3 the arguments
+    public static final Pattern METHOD_WITH_BODY = Pattern.compile(
+            "(public|protected|private|static)+\\s+[\\w\\[\\]<>]+\\s+(\\w+)\\s*\\(([^)]*)\\)[\\w\\s]*\\{");
+
+    // Lines starting with an access modifier that is not followed by "static" or "class"
+    public static final Pattern NON_STATIC_MEMBER =
+            Pattern.compile("(?m)^\\s*(public|protected|private)\\s+(?!static|class)");
+
+    // Declarations of fields renamed to "field_...", with optional modifiers, any valid Java type
+    // (primitive or object, optionally an array) and an optional initializer
+    public static final Pattern FIELD_DECLARATION = Pattern.compile(
+            "(?m)^(\\s*)(public\\s+|protected\\s+|private\\s+)?(static\\s+)?(final\\s+)?([\\w\\["
+            + "\\]\\<\\>]+\\s+)(field_\\w+\\s*)(=\\s*[^;]+)?;");
+
+    // Application subclass
+
+    // group 2 is the name of the Context parameter
+    public static final Pattern ATTACH_BASE_CONTEXT = Pattern.compile(
+            "(public|protected|private|\\s*)\\s*void\\s*attachBaseContext\\(Context\\s+(\\w+)\\)");
+    public static final Pattern SUPER_ATTACH_BASE_CONTEXT = Pattern.compile("super\\.attachBaseContext\\(\\w+\\);");
+
+    // Expressions
+
+    public static final Pattern THIS_ACCESS = Pattern.compile("\\bthis\\.");
+    // group 1 is the assigned variable, group 2 the whitespace after '='
+    public static final Pattern VARIABLE_ASSIGNMENT = Pattern.compile("([a-zA-Z0-9_]+)\\s*=(\\s*)");
+    public static final Pattern ASSIGNMENT_OPERATOR = Pattern.compile("\\s*=\\s*");
+    public static final Pattern WHITESPACE = Pattern.compile("\\s");
+    public static final Pattern WHITESPACE_RUN = Pattern.compile("\\s+");
+    public static final Pattern LEADING_WHITESPACE = Pattern.compile("^\\s+");
+
+    // Android API replacements in CodeReplacerUtils
+
+    // group 1 is the first argument
+    public static final Pattern DEX_CLASS_LOADER_LINE = Pattern.compile(".*new\\s+DexClassLoader\\(([^,]+),.*");
+    public static final Pattern ARRAY_MAP_LINE = Pattern.compile("(?m)^(?!import).*\\bArrayMap\\b.*");
+    public static final Pattern ARRAY_MAP = Pattern.compile("\\bArrayMap\\b");
+    public static final Pattern SOURCE_DIR_LINE = Pattern.compile("(?m).*\\.sourceDir.*");
+    public static final Pattern SOURCE_DIR =
+            Pattern.compile("(sourceDir)|(([a-zA-Z]+\\.)sourceDir|[a-zA-Z]+\\(\\)\\.sourceDir)");
+    public static final Pattern SDK_INT_LINE = Pattern.compile("(?m).*SDK_INT.*");
+    public static final Pattern SDK_INT = Pattern.compile("(SDK_INT)|(([a-zA-Z]+\\.)+SDK_INT)");
+    // group 1 is what precedes the call, group 2 the argument
+    public static final Pattern GET_FILE_STREAM_PATH_CALL = Pattern.compile("(.*)getFileStreamPath\\((.*)\\)");
+    public static final Pattern GET_PACKAGE_NAME_LINE = Pattern.compile(".*getPackageName\\(\\)(\\s*;)");
+    public static final Pattern GET_PACKAGE_NAME = Pattern.compile("getPackageName\\(\\)|[\\w+\\.]+getPackageName\\(\\)");
+    // group 1 is what precedes the call, group 2 the directory name
+    public static final Pattern GET_DIR_CALL = Pattern.compile("(.*)getDir\\(([^,]+),\\s*\\d+\\s*\\)");
+
+    // Reflection removal
+
+    // Lines declaring a method or a member
+    public static final Pattern MEMBER_DECLARATION_LINE = Pattern.compile(".*\\s(public|private|protected|static|void)+\\s.");
+    // Start of a renamed method, main or onCreate, matched against the trimmed line
+    public static final Pattern METHOD_START = Pattern.compile(
+            ".*(public|protected|private|static|\\s)+\\s*\\S+\\s+(method\\S+|main|onCreate)\\(.*\\)\\s+[\\w\\s]*\\{");
+
+    // An identifier delimited the way reflection removal expects it: by brackets, whitespace, dots or parentheses
+    public static Pattern surroundedIdentifier(String identifier) {
+        return Pattern.compile("[\\[\\]\\s\\.\\(\\)]" + Pattern.quote(identifier) + "[\\[\\]\\s\\.\\(\\),;]");
+    }
+}
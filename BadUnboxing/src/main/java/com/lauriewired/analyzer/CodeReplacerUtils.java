@@ -3,7 +3,6 @@ package com.lauriewired.analyzer;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class CodeReplacerUtils {
     // Dummy class defintions
@@ -18,8 +17,10 @@ public class CodeReplacerUtils {
         "}\n";
 
     private SimpleLogger logger;
-    public CodeReplacerUtils(SimpleLogger logger) {
+    private NameAllocator names;
+    public CodeReplacerUtils(SimpleLogger logger, NameAllocator names) {
         this.logger = logger;
+        this.names = names;
     }
 
     //TODO: update variable patterns to look like this Pattern variablePattern = Pattern.compile("([a-zA-Z0-9_]+)\\s*=\\s*");
@@ -54,13 +55,13 @@ public class CodeReplacerUtils {
     public static StringBuilder processClassImports(StringBuilder javaCode, String newClassCode) {
         // Extract imports from existing code
         Set<String> existingImports = new HashSet<>();
-        Matcher importMatcher = Pattern.compile("(?m)^import\\s+.*?;").matcher(javaCode);
+        Matcher importMatcher = CodePatterns.IMPORT_STATEMENT.matcher(javaCode);
         while (importMatcher.find()) {
             existingImports.add(importMatcher.group());
         }
     
         StringBuilder imports = new StringBuilder();
-        importMatcher = Pattern.compile("(?m)^import\\s+.*?;").matcher(newClassCode);
+        importMatcher = CodePatterns.IMPORT_STATEMENT.matcher(newClassCode);
         while (importMatcher.find()) {
             String importStatement = importMatcher.group();
             if (!existingImports.contains(importStatement)) {
@@ -76,10 +77,8 @@ public class CodeReplacerUtils {
      * Modifying methods from dalvik.system.DexClassLoader
      */
     public String processDexClassLoaderMethods(String classCode) {
-        // Pattern to find calls to new DexClassLoader with arguments
-        Pattern dexClassLoaderPattern = Pattern.compile(".*new\\s+DexClassLoader\\(([^,]+),.*");
-    
-        Matcher matcher = dexClassLoaderPattern.matcher(classCode);
+        // Find calls to new DexClassLoader with arguments
+        Matcher matcher = CodePatterns.DEX_CLASS_LOADER_LINE.matcher(classCode);
         StringBuffer modifiedCode = new StringBuffer();
     
         // Replace all occurrences with System.out.println(firstArgument)
@@ -108,16 +107,14 @@ public class CodeReplacerUtils {
     public String processArrayMapMethods(String classCode, StringBuilder imports) {
         classCode = insertImport("java.util.HashMap", classCode);
 
-        // Pattern to find lines containing ArrayMap
-        Pattern arrayMapPattern = Pattern.compile("^(?!import).*\\bArrayMap\\b.*", Pattern.MULTILINE);
-
-        Matcher matcher = arrayMapPattern.matcher(classCode);
+        // Find lines containing ArrayMap
+        Matcher matcher = CodePatterns.ARRAY_MAP_LINE.matcher(classCode);
         StringBuffer modifiedCode = new StringBuffer();
 
         // Replace all occurrences of ArrayMap with HashMap and add a comment at the end of the line
         while (matcher.find()) {
             String line = matcher.group();
-            String modifiedLine = line.replaceAll("\\bArrayMap\\b", "HashMap") + " // BadUnboxing: Replacing ArrayMap with HashMap";
+            String modifiedLine = CodePatterns.ARRAY_MAP.matcher(line).replaceAll("HashMap") + " // BadUnboxing: Replacing ArrayMap with HashMap";
 
             logger.log("Replacing call to ArrayMap references with HashMap");
             
@@ -139,17 +136,15 @@ public class CodeReplacerUtils {
     }
 
     public String modifySourceDir(String classCode, String apkPath) {
-        // Pattern to find lines containing Build.VERSION.SDK_INT
-        Pattern sdkIntPattern = Pattern.compile(".*\\.sourceDir.*", Pattern.MULTILINE);
-    
-        Matcher matcher = sdkIntPattern.matcher(classCode);
+        // Find lines containing sourceDir
+        Matcher matcher = CodePatterns.SOURCE_DIR_LINE.matcher(classCode);
         StringBuffer modifiedCode = new StringBuffer();
     
         // Replace all occurrences with the hardcoded value 30 and add a comment at the end of the line
         while (matcher.find()) {
             String line = matcher.group();
             String replacement = "\"" + apkPath.replace("\\", "\\\\\\\\\\\\\\\\") + "\"";
-            String modifiedLine = line.replaceAll("(sourceDir)|(([a-zA-Z]+\\.)sourceDir|[a-zA-Z]+\\(\\)\\.sourceDir)", replacement);
+            String modifiedLine = CodePatterns.SOURCE_DIR.matcher(line).replaceAll(replacement);
             // Add the comment at the end of the line
             modifiedLine += " // BadUnboxing: Replacing sourceDir with path to APK";
             
@@ -171,17 +166,15 @@ public class CodeReplacerUtils {
     }
 
     public String modifyBuildSdkInt(String classCode) {
-        // Pattern to find lines containing Build.VERSION.SDK_INT
-        Pattern sdkIntPattern = Pattern.compile(".*SDK_INT.*", Pattern.MULTILINE);
-    
-        Matcher matcher = sdkIntPattern.matcher(classCode);
+        // Find lines containing Build.VERSION.SDK_INT
+        Matcher matcher = CodePatterns.SDK_INT_LINE.matcher(classCode);
         StringBuffer modifiedCode = new StringBuffer();
     
         // Replace all occurrences with the hardcoded value 30 and add a comment at the end of the line
         while (matcher.find()) {
             String line = matcher.group();
             // Replace SDK_INT with 30
-            String modifiedLine = line.replaceAll("(SDK_INT)|(([a-zA-Z]+\\.)+SDK_INT)", "30");
+            String modifiedLine = CodePatterns.SDK_INT.matcher(line).replaceAll("30");
             // Add the comment at the end of the line
             modifiedLine += " // BadUnboxing: Hardcode build SDK_INT";
             
@@ -196,58 +189,50 @@ public class CodeReplacerUtils {
     /*
      * Modifying methods from android.app.Application
      */
-    public void processApplicationMethods(StringBuilder javaCode) {
-        insertDummyApplicationClass(javaCode);
+    public void addApplicationRules(RewritePipeline pipeline) {
+        pipeline.add(insertDummyClassRule(DUMMY_APPLICATION_CLASS, "Application"));
     }
 
-    public void insertDummyApplicationClass(StringBuilder javaCode) {
-        // Find the end of the import section
-        Matcher importMatcher = Pattern.compile("(?m)^import\\s+.*?;").matcher(javaCode);
-        int lastImportIndex = 0;
-        while (importMatcher.find()) {
-            lastImportIndex = importMatcher.end();
-        }
-        
-        // Find the index to insert the dummy class after the last import
-        int insertIndex = javaCode.indexOf("\n", lastImportIndex) + 1;
-        javaCode.insert(insertIndex, "\n" + DUMMY_APPLICATION_CLASS + "\n");
-    
-        logger.log("Inserted dummy Application class");
-    }
-    
     /*
      * Modifying methods from android.content.Context 
      */
 
-    public void processContextMethods(StringBuilder javaCode, String className, String packageName) {
-        insertDummyContextClass(javaCode);
-        modifyGetDirMethod(javaCode, className);
-        modifyGetPackageName(javaCode, packageName);
-        modifyGetFileStreamPath(javaCode, className);
+    public void addContextRules(RewritePipeline pipeline, String className, String packageName) {
+        pipeline.add(insertDummyClassRule(DUMMY_CONTEXT_CLASS, "Context"))
+                .add((line, lineNumber) -> modifyGetDirMethod(line, className))
+                .add((line, lineNumber) -> modifyGetPackageName(line, packageName))
+                .add((line, lineNumber) -> modifyGetFileStreamPath(line, className));
     }
 
-    public void insertDummyContextClass(StringBuilder javaCode) {
-        // Find the end of the import section
-        Matcher importMatcher = Pattern.compile("(?m)^import\\s+.*?;").matcher(javaCode);
-        int lastImportIndex = 0;
-        while (importMatcher.find()) {
-            lastImportIndex = importMatcher.end();
-        }
-        
-        // Find the index to insert the dummy class after the last import
-        int insertIndex = javaCode.indexOf("\n", lastImportIndex) + 1;
-        javaCode.insert(insertIndex, "\n" + DUMMY_CONTEXT_CLASS + "\n");
+    // Inserts the dummy class after the line of the last import, or after the first line without imports
+    private RewritePipeline.Rule insertDummyClassRule(String dummyClass, String name) {
+        return new RewritePipeline.Rule() {
+            private int lastImportLine = 0;
+
+            @Override
+            public String rewriteLine(String line, int lineNumber) {
+                if (line.startsWith("import") && CodePatterns.IMPORT_STATEMENT.matcher(line).find()) {
+                    lastImportLine = lineNumber;
+                }
+                return line;
+            }
 
-        logger.log("Inserted dummy Context class");
+            @Override
+            public void finish(RewritePipeline pipeline) {
+                pipeline.insertAfterLine(lastImportLine, "\n" + dummyClass + "\n");
+                logger.log("Inserted dummy " + name + " class");
+            }
+        };
     }
 
     // TODO we might be able to combine this method and the getDir method. Lots of repeated code except regex
-    private void modifyGetFileStreamPath(StringBuilder javaCode, String className) {
-        // Pattern to find getFileStreamPath method calls in both variable assignment and return statement contexts
-        Pattern getFileStreamPathPattern = Pattern.compile("(.*)getFileStreamPath\\((.*)\\)");
-    
-        Matcher matcher = getFileStreamPathPattern.matcher(javaCode);
-        StringBuffer modifiedCode = new StringBuffer();
+    private String modifyGetFileStreamPath(String line, String className) {
+        if (!line.contains("getFileStreamPath(")) {
+            return line;
+        }
+        // Find getFileStreamPath method calls in both variable assignment and return statement contexts
+        Matcher matcher = CodePatterns.GET_FILE_STREAM_PATH_CALL.matcher(line);
+        StringBuilder modifiedCode = new StringBuilder();
     
         while (matcher.find()) {
             String prefix = matcher.group(1); // This captures 'var = ' or 'return ', if present
@@ -257,20 +242,20 @@ public class CodeReplacerUtils {
             String replacement = "new File(System.getProperty(\"user.dir\") + \"/" + className + "_dynamic\", " + fileName + ")";
             if (prefix != null && prefix.contains("=")) {
                 // Case for variable assignment
-                String varName = prefix.split("\\s*=\\s*")[0].trim();
+                String varName = CodePatterns.ASSIGNMENT_OPERATOR.split(prefix)[0].trim();
 
                 replacement = varName + " = " + replacement;
                 
                 // Make sure we don't include type if it was included
-                if (varName.split("\\s").length > 1) {
-                    varName = varName.split("\\s")[1].trim();
+                if (CodePatterns.WHITESPACE.split(varName).length > 1) {
+                    varName = CodePatterns.WHITESPACE.split(varName)[1].trim();
                 }
 
                 replacement += ";\nif (!" + varName + ".exists()) { " + varName + ".mkdirs(); }";
             } else {
                 // Case for return statement
                 String newFileReplacement = replacement;
-                String varName = "var_tmp_" + IdentifierRenamer.generateRandomPostfix();
+                String varName = "var_tmp_" + names.nextPostfix();
                 replacement = "File " + varName + " = " + newFileReplacement + ";\n";
                 replacement += "if (!" + varName + ".exists()) { " + varName + ".mkdirs(); }";
                 replacement += "\nreturn " + varName + ";";
@@ -284,38 +269,37 @@ public class CodeReplacerUtils {
         }
         matcher.appendTail(modifiedCode);
     
-        // Replace the original code with the modified code
-        javaCode.setLength(0);
-        javaCode.append(modifiedCode);
+        return modifiedCode.toString();
     }
 
-    private void modifyGetPackageName(StringBuilder javaCode, String packageName) {
-        // Pattern to find lines containing getPackageName() calls
-        Pattern getPackageNamePattern = Pattern.compile(".*getPackageName\\(\\)(\\s*;)");
-        Matcher lineMatcher = getPackageNamePattern.matcher(javaCode);
-        StringBuffer modifiedCode = new StringBuffer();
+    private String modifyGetPackageName(String line, String packageName) {
+        if (!line.contains("getPackageName()")) {
+            return line;
+        }
+        // Find lines containing getPackageName() calls
+        Matcher lineMatcher = CodePatterns.GET_PACKAGE_NAME_LINE.matcher(line);
+        StringBuilder modifiedCode = new StringBuilder();
         
         while (lineMatcher.find()) {
-            String line = lineMatcher.group();
+            String matchedLine = lineMatcher.group();
             // Replace getPackageName() or any prefix with it using the new regex
-            String modifiedLine = line.replaceAll("getPackageName\\(\\)|[\\w+\\.]+getPackageName\\(\\)", "\"" + packageName + "\"");
+            String modifiedLine = CodePatterns.GET_PACKAGE_NAME.matcher(matchedLine).replaceAll("\"" + packageName + "\"");
             modifiedLine += " // BadUnboxing: Hardcode package name";
             lineMatcher.appendReplacement(modifiedCode, modifiedLine);
             logger.log("Replacing call to getPackageName with string literal '" + packageName + "'");
         }
         lineMatcher.appendTail(modifiedCode);
         
-        // Replace the original code with the modified code
-        javaCode.setLength(0);
-        javaCode.append(modifiedCode);
+        return modifiedCode.toString();
     }
     
-    private void modifyGetDirMethod(StringBuilder javaCode, String className) {
-        // Pattern to find getDir method calls in both variable assignment and return statement contexts
-        Pattern getDirPattern = Pattern.compile("(.*)getDir\\(([^,]+),\\s*\\d+\\s*\\)");
-    
-        Matcher matcher = getDirPattern.matcher(javaCode);
-        StringBuffer modifiedCode = new StringBuffer();
+    private String modifyGetDirMethod(String line, String className) {
+        if (!line.contains("getDir(")) {
+            return line;
+        }
+        // Find getDir method calls in both variable assignment and return statement contexts
+        Matcher matcher = CodePatterns.GET_DIR_CALL.matcher(line);
+        StringBuilder modifiedCode = new StringBuilder();
     
         while (matcher.find()) {
             String prefix = matcher.group(1); // This captures 'var = ' or 'return ', if present
@@ -325,19 +309,19 @@ public class CodeReplacerUtils {
             String replacement = "new File(System.getProperty(\"user.dir\") + \"/" + className + "_dynamic\", " + dirName + ")";
             if (prefix != null && prefix.contains("=")) {
                 // Case for variable assignment
-                String varName = prefix.split("\\s*=\\s*")[0].trim();
+                String varName = CodePatterns.ASSIGNMENT_OPERATOR.split(prefix)[0].trim();
                 replacement = varName + " = " + replacement;
 
                 // Make sure we don't include type if it was included
-                if (varName.split("\\s").length > 1) {
-                    varName = varName.split("\\s")[1].trim();
+                if (CodePatterns.WHITESPACE.split(varName).length > 1) {
+                    varName = CodePatterns.WHITESPACE.split(varName)[1].trim();
                 }
 
                 replacement += ";\nif (!" + varName + ".exists()) { " + varName + ".mkdirs(); }";
             } else {
                 // Case for return statement
                 String newFileReplacement = replacement;
-                String varName = "var_tmp_" + IdentifierRenamer.generateRandomPostfix();
+                String varName = "var_tmp_" + names.nextPostfix();
                 replacement = "File " + varName + " = " + newFileReplacement + ";\n";
                 replacement += "if (!" + varName + ".exists()) { " + varName + ".mkdirs(); }";
                 replacement += "\nreturn " + varName + ";";
@@ -351,8 +335,6 @@ public class CodeReplacerUtils {
         }
         matcher.appendTail(modifiedCode);
     
-        // Replace the original code with the modified code
-        javaCode.setLength(0);
-        javaCode.append(modifiedCode);
+        return modifiedCode.toString();
     }
 }
\ No newline at end of file
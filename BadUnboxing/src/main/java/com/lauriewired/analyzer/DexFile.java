@@ -0,0 +1,82 @@
+package com.lauriewired.analyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Consumer;
+
+/*
+ * Reads the string and class tables straight out of a dex buffer (see MappedApk), without
+ * loading the dex into jadx. Only header-addressed tables are touched.
+ */
+public class DexFile {
+    private static final int STRING_IDS_SIZE_OFFSET = 0x38;
+    private static final int STRING_IDS_OFF_OFFSET = 0x3C;
+    private static final int TYPE_IDS_SIZE_OFFSET = 0x40;
+    private static final int TYPE_IDS_OFF_OFFSET = 0x44;
+    private static final int CLASS_DEFS_SIZE_OFFSET = 0x60;
+    private static final int CLASS_DEFS_OFF_OFFSET = 0x64;
+    private static final int CLASS_DEF_ITEM_SIZE = 32;
+
+    private final ByteBuffer dex;
+
+    public DexFile(ByteBuffer dex) {
+        this.dex = dex.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (this.dex.limit() < 0x70 || this.dex.get(0) != 'd' || this.dex.get(1) != 'e' || this.dex.get(2) != 'x') {
+            throw new IllegalArgumentException("Not a dex file");
+        }
+    }
+
+    public int getStringCount() {
+        return dex.getInt(STRING_IDS_SIZE_OFFSET);
+    }
+
+    public String getString(int index) {
+        int dataOffset = dex.getInt(dex.getInt(STRING_IDS_OFF_OFFSET) + 4 * index);
+        int pos = dataOffset;
+        // Skip the uleb128 length in UTF-16 code units, the data is 0-terminated anyway
+        while ((dex.get(pos++) & 0x80) != 0) {
+            // continuation byte
+        }
+        return decodeMutf8(pos);
+    }
+
+    // Type descriptors (Lcom/example/Foo;) of all classes defined in this dex, inner classes included
+    public void forEachClassDescriptor(Consumer<String> consumer) {
+        int typeIdsOff = dex.getInt(TYPE_IDS_OFF_OFFSET);
+        int typeIdsSize = dex.getInt(TYPE_IDS_SIZE_OFFSET);
+        int classDefsOff = dex.getInt(CLASS_DEFS_OFF_OFFSET);
+        int classDefsSize = dex.getInt(CLASS_DEFS_SIZE_OFFSET);
+        for (int i = 0; i < classDefsSize; i++) {
+            int classIdx = dex.getInt(classDefsOff + i * CLASS_DEF_ITEM_SIZE);
+            if (classIdx < 0 || classIdx >= typeIdsSize) {
+                throw new IllegalArgumentException("Bad class_idx " + classIdx);
+            }
+            consumer.accept(getString(dex.getInt(typeIdsOff + 4 * classIdx)));
+        }
+    }
+
+    // Lcom/example/Foo; -> com/example/Foo.class, the format of JadxUtils.getDexClasses
+    public static String descriptorToClassFile(String descriptor) {
+        return descriptor.substring(1, descriptor.length() - 1) + ".class";
+    }
+
+    private String decodeMutf8(int pos) {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int a = dex.get(pos++) & 0xFF;
+            if (a == 0) {
+                return sb.toString();
+            }
+            if (a < 0x80) {
+                sb.append((char) a);
+            } else if ((a & 0xE0) == 0xC0) {
+                int b = dex.get(pos++) & 0x3F;
+                sb.append((char) (((a & 0x1F) << 6) | b));
+            } else {
+                int b = dex.get(pos++) & 0x3F;
+                int c = dex.get(pos++) & 0x3F;
+                sb.append((char) (((a & 0x0F) << 12) | (b << 6) | c));
+            }
+        }
+    }
+}
@@ -1,11 +1,10 @@
 package com.lauriewired.analyzer;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
-import java.util.Set;
+import java.util.Map;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import jadx.api.JadxDecompiler;
 import jadx.api.JavaClass;
@@ -14,221 +13,167 @@ import jadx.api.JavaMethod;
 import jadx.core.dex.nodes.FieldNode;
 
 public class IdentifierRenamer {
-    private static final int POSTFIX_LENGTH = 8;
-    private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-    private static final Random RANDOM = new Random();
 
-    public static void renameMethodsAndFields(JavaClass javaClass, JadxDecompiler jadx, Set<String> existingNames) {
+    public static void renameMethodsAndFields(JavaClass javaClass, JadxDecompiler jadx, NameAllocator names) {
         // Via JADX API
-        renameMethods(javaClass, jadx, existingNames);
-        renameFields(javaClass, jadx, existingNames);
+        renameMethods(javaClass, jadx, names);
+        renameFields(javaClass, jadx, names);
     }
 
-    public static StringBuilder renameArgsAndVars(JavaClass javaClass, JadxDecompiler jadx, Set<String> existingNames) {
-        javaClass.reload(); // Make sure we got the renamed methods and fields
+    public static StringBuilder renameArgsAndVars(JavaClass javaClass, CodeCache codeCache, NameAllocator names) {
+        // Make sure we got the renamed methods and fields
+        return renameArgsAndVars(codeCache.reload(javaClass), names);
+    }
 
-        // Via regular expressions
+    public static StringBuilder renameArgsAndVars(String decompiledCode, NameAllocator names) {
+        // Via the decompiled code
         // Can't find a great way to rename these via the JADX API
-        StringBuilder javaCode = new StringBuilder();
-        javaCode.append(javaClass.getCode());
-
-        renameMethodArguments(javaCode, existingNames);
-        renameLocalVariables(javaCode, existingNames);
-
+        StringBuilder javaCode = new StringBuilder(decompiledCode);
+        renameMethodArgsAndVars(javaCode, names);
         return javaCode;
     }
 
-    private static void renameMethodArguments(StringBuilder javaCode, Set<String> existingNames) {
-        // Pattern to match methods with their arguments
-        Pattern methodPattern = Pattern.compile("(public|protected|private|static)+\\s+[\\w\\[\\]<>]+\\s+(\\w+)\\s*\\(([^)]*)\\)[\\w\\s]*\\{");
-
-        // Find the last match and work backwards
-        Matcher methodMatcher = methodPattern.matcher(javaCode);
+    /*
+     * Methods are handled last to first, so rewriting one never moves those still to come, and a
+     * method nested in another one is renamed before its enclosing method. Each method is tokenized
+     * once: arguments come from its signature, locals from declarations in its body, and every
+     * reference is replaced in a single walk over the tokens.
+     */
+    private static void renameMethodArgsAndVars(StringBuilder javaCode, NameAllocator names) {
+        Matcher methodMatcher = CodePatterns.METHOD_WITH_BODY.matcher(javaCode);
         List<Integer> matchPositions = new ArrayList<>();
 
         while (methodMatcher.find()) {
             matchPositions.add(methodMatcher.start());
         }
 
-        // Process matches in reverse order
         for (int i = matchPositions.size() - 1; i >= 0; i--) {
-            int matchStart = matchPositions.get(i);
-            methodMatcher = methodPattern.matcher(javaCode);
-            methodMatcher.find(matchStart);
-
-            String methodSignature = methodMatcher.group();
-            String arguments = methodMatcher.group(3); // Capture group 3 for arguments
-            String methodBody = extractMethodBody(javaCode, methodMatcher.end());
-            String modifiedMethodBody = methodBody;
-
-            if (!arguments.isEmpty()) {
-                String[] args = arguments.split(",");
-                for (String arg : args) {
-                    arg = arg.trim();
-                    String[] parts = arg.split("\\s+");
-                    String argName = parts[parts.length - 1];
-                    if (!argName.startsWith("var_") && !argName.startsWith("method_")) {
-                        String uniqueArgName = generateUniqueName(existingNames, argName, "arg_");
-
-                        //logger.info("Renaming method argument {} to {}", argName, uniqueArgName);
-
-                        // Replace all references to this argument within the method body
-                        modifiedMethodBody = modifiedMethodBody.replaceAll("\\b" + argName + "\\b", uniqueArgName);
-
-                        // Update the method signature with the new argument name
-                        methodSignature = methodSignature.replaceAll("\\b" + argName + "\\b", uniqueArgName);
-                    }
-                }
+            methodMatcher.find(matchPositions.get(i));
+            int argsStart = methodMatcher.start(3);
+            int argsEnd = methodMatcher.end(3);
+            JavaTokens args = JavaTokens.tokenize(javaCode, argsStart, argsEnd);
+            JavaTokens body = JavaTokens.tokenizeBlock(javaCode, methodMatcher.end());
+
+            Map<String, String> renames = new HashMap<>();
+            collectArguments(args, renames, names);
+            collectLocalVariables(body, renames, names);
+            if (renames.isEmpty()) {
+                continue;
             }
 
-            // Replace the method body in the original code
-            String fullMethod = methodSignature + modifiedMethodBody;
-            javaCode.replace(methodMatcher.start(), methodMatcher.end() + methodBody.length(), fullMethod);
+            int bodyEnd = Math.max(body.end(), methodMatcher.end());
+            StringBuilder renamed = new StringBuilder(bodyEnd - argsStart + renames.size() * 16);
+            appendRenamed(renamed, javaCode, args, argsStart, argsEnd, renames);
+            renamed.append(javaCode, argsEnd, methodMatcher.end());
+            appendRenamed(renamed, javaCode, body, methodMatcher.end(), bodyEnd, renames);
+            javaCode.replace(argsStart, bodyEnd, renamed.toString());
         }
     }
 
-    private static void renameLocalVariables(StringBuilder javaCode, Set<String> existingNames) {
-        // Pattern to match methods with their bodies
-        Pattern methodPattern = Pattern.compile("(public|protected|private|static)+\\s+[\\w\\[\\]<>]+\\s+(\\w+)\\s*\\(([^)]*)\\)[\\w\\s]*\\{");
-
-        // Find the last match and work backwards
-        Matcher methodMatcher = methodPattern.matcher(javaCode);
-        List<Integer> matchPositions = new ArrayList<>();
-
-        while (methodMatcher.find()) {
-            matchPositions.add(methodMatcher.start());
+    // An argument name is the identifier right before a comma or the end of the list, outside of generics
+    private static void collectArguments(JavaTokens args, Map<String, String> renames, NameAllocator names) {
+        int angleDepth = 0;
+        for (int i = 0; i < args.size(); i++) {
+            if (args.isPunctuation(i, '<')) {
+                angleDepth++;
+            } else if (args.isPunctuation(i, '>')) {
+                angleDepth--;
+            }
+            if (angleDepth != 0 || args.kind(i) != JavaTokens.Kind.IDENTIFIER
+                    || (i + 1 < args.size() && !args.isPunctuation(i + 1, ','))) {
+                continue;
+            }
+            String argName = args.text(i);
+            if (!argName.startsWith("var_") && !argName.startsWith("method_") && !renames.containsKey(argName)) {
+                renames.put(argName, names.allocate("arg_", argName));
+            }
         }
+    }
 
-        // Process matches in reverse order
-        for (int i = matchPositions.size() - 1; i >= 0; i--) {
-            int matchStart = matchPositions.get(i);
-            methodMatcher = methodPattern.matcher(javaCode);
-            methodMatcher.find(matchStart);
-
-            String methodSignature = methodMatcher.group();
-            String methodBody = extractMethodBody(javaCode, methodMatcher.end());
-            String modifiedMethodBody = methodBody;
-
-            // Pattern to match local variable declarations (including array types)
-            Pattern localVarPattern = Pattern.compile("(\\b\\w+[\\[\\]\\<\\?\\>]*)\\s+(\\b\\w+\\b)\\s*(=|;)");
-            Matcher localVarMatcher = localVarPattern.matcher(methodBody);
-
-            while (localVarMatcher.find()) {
-                String varType = localVarMatcher.group(1);
-                String varName = localVarMatcher.group(2);
-                if (!varName.matches("\\d+") && !varName.equals("null") && 
-                    !varName.equals("true") && !varName.equals("false") &&
-                    !varName.startsWith("var_")) {
-
-                    String uniqueVarName = generateUniqueName(existingNames, varName, "var_");
-
-                    // Replace all references to this variable within the method body
-                    if (varName.startsWith("method_")) {
-                        modifiedMethodBody = replaceVariableNamesWithoutMethod(modifiedMethodBody, varName, uniqueVarName);
-                    } else {
-                        modifiedMethodBody = replaceVariableNames(modifiedMethodBody, varName, uniqueVarName);
-                    }
-
-                    //logger.info("Renaming local variable {} to {}", varName, uniqueVarName);
-                }
+    /*
+     * A local declaration is a type followed by a name and then '=' or ';'. The type may carry
+     * array or generic brackets ("int[] a", "List<String> b") but can't be a keyword other than a
+     * primitive type, which keeps statements like "return a;" from being taken for declarations.
+     */
+    private static void collectLocalVariables(JavaTokens body, Map<String, String> renames, NameAllocator names) {
+        for (int i = 1; i + 1 < body.size(); i++) {
+            if (body.kind(i) != JavaTokens.Kind.IDENTIFIER || !body.spaceBefore(i) || !isAssignmentOrEnd(body, i + 1)) {
+                continue;
+            }
+            int typeEnd = i - 1;
+            while (typeEnd > 0 && isTypeSuffix(body, typeEnd) && !body.spaceBefore(typeEnd)) {
+                typeEnd--;
+            }
+            if (body.kind(typeEnd) != JavaTokens.Kind.IDENTIFIER) {
+                continue;
+            }
+            String type = body.text(typeEnd);
+            if (JavaTokens.isKeyword(type) && !JavaTokens.isPrimitiveType(type)) {
+                continue;
+            }
+            String varName = body.text(i);
+            if (!JavaTokens.isKeyword(varName) && !varName.startsWith("var_") && !renames.containsKey(varName)) {
+                renames.put(varName, names.allocate("var_", varName));
             }
-
-            // Replace the method body in the original code
-            String fullMethod = methodSignature + modifiedMethodBody;
-            javaCode.replace(methodMatcher.start(), methodMatcher.end() + methodBody.length(), fullMethod);
         }
     }
 
-    private static String replaceVariableNamesWithoutMethod(String body, String varName, String uniqueVarName) {
-        StringBuilder result = new StringBuilder();
-        // This regex looks for the variable name as a whole word, ensuring it isn't part of a longer string or variable name
-        Pattern pattern = Pattern.compile("\\b" + Pattern.quote(varName) + "\\b(?![\\(])");  // Negative lookahead to avoid matches followed by '('
-        Matcher matcher = pattern.matcher(body);
-    
-        int lastIndex = 0;
-        while (matcher.find()) {
-            // Append the part of the body before the match, then append the new unique variable name
-            result.append(body, lastIndex, matcher.start())
-                  .append(uniqueVarName);
-            lastIndex = matcher.end();
+    private static boolean isAssignmentOrEnd(JavaTokens tokens, int i) {
+        if (tokens.isPunctuation(i, ';')) {
+            return true;
         }
-        // Append the rest of the body after the last match
-        result.append(body.substring(lastIndex));
-        return result.toString();
+        // "=" but not "=="
+        return tokens.isPunctuation(i, '=') && (i + 1 >= tokens.size() || !tokens.isPunctuation(i + 1, '=')
+                || tokens.spaceBefore(i + 1));
     }
 
-    private static String replaceVariableNames(String body, String varName, String uniqueVarName) {
-        StringBuilder result = new StringBuilder();
-        Pattern pattern = Pattern.compile("\\b" + varName + "\\b");
-        Matcher matcher = pattern.matcher(body);
-    
-        int lastIndex = 0;
-        while (matcher.find()) {
-            // Check the preceding character
-            if (matcher.start() == 0 || body.charAt(matcher.start() - 1) != '.') {
-                result.append(body, lastIndex, matcher.start())
-                      .append(uniqueVarName);
-            } else {
-                result.append(body, lastIndex, matcher.end());
-            }
-            lastIndex = matcher.end();
-        }
-        result.append(body.substring(lastIndex));
-        return result.toString();
+    private static boolean isTypeSuffix(JavaTokens tokens, int i) {
+        return tokens.isPunctuation(i, '[') || tokens.isPunctuation(i, ']') || tokens.isPunctuation(i, '<')
+                || tokens.isPunctuation(i, '>') || tokens.isPunctuation(i, '?');
     }
 
-    private static String extractMethodBody(StringBuilder javaCode, int startIndex) {
-        int openBraces = 1;
-        int currentIndex = startIndex;
-        while (openBraces > 0 && currentIndex < javaCode.length()) {
-            char currentChar = javaCode.charAt(currentIndex);
-            if (currentChar == '{') {
-                openBraces++;
-            } else if (currentChar == '}') {
-                openBraces--;
+    /*
+     * Copies code[from, to) replacing renamed identifiers. Member accesses ("obj.name") and calls
+     * ("name(...)") are left alone, as are string literals and comments.
+     */
+    private static void appendRenamed(StringBuilder out, CharSequence code, JavaTokens tokens, int from, int to,
+            Map<String, String> renames) {
+        int copied = from;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.kind(i) != JavaTokens.Kind.IDENTIFIER
+                    || (i > 0 && tokens.isPunctuation(i - 1, '.'))
+                    || (i + 1 < tokens.size() && tokens.isPunctuation(i + 1, '('))) {
+                continue;
+            }
+            String newName = renames.get(tokens.text(i));
+            if (newName != null) {
+                out.append(code, copied, tokens.start(i)).append(newName);
+                copied = tokens.end(i);
             }
-            currentIndex++;
         }
-        return javaCode.substring(startIndex, currentIndex);
+        out.append(code, copied, to);
     }
 
-    private static void renameMethods(JavaClass javaClass, JadxDecompiler jadx, Set<String> existingNames) {
+    private static void renameMethods(JavaClass javaClass, JadxDecompiler jadx, NameAllocator names) {
         for (JavaMethod method : javaClass.getMethods()) {
             if (!method.getName().startsWith("method_") && !method.getName().equals("attachBaseContext") &&
                 !method.getName().equals("onCreate") && !method.getName().equals("<init>")) {
                     
-                String uniqueMethodName = generateUniqueName(existingNames, method.getName(), "method_");
+                String uniqueMethodName = names.allocate("method_", method.getName());
                 //logger.info("Renaming method {} to {}", method.getName(), uniqueMethodName);
                 method.getMethodNode().rename(uniqueMethodName);
             }
         }
     }
 
-    private static void renameFields(JavaClass javaClass, JadxDecompiler jadx, Set<String> existingNames) {
+    private static void renameFields(JavaClass javaClass, JadxDecompiler jadx, NameAllocator names) {
         for (JavaField field : javaClass.getFields()) {
             FieldNode fieldNode = field.getFieldNode();
             if (!field.getName().startsWith("method_") && !field.getName().startsWith("field_")) {
-                String uniqueFieldName = generateUniqueName(existingNames, field.getName(), "field_");
+                String uniqueFieldName = names.allocate("field_", field.getName());
                 //logger.info("Renaming field {} to {}", field.getName(), uniqueFieldName);
                 fieldNode.rename(uniqueFieldName);
             }
         }
     }
-
-    private static String generateUniqueName(Set<String> existingNames, String originalName, String prefix) {
-        String uniqueName;
-        do {
-            uniqueName = prefix + originalName + "_" + generateRandomPostfix();
-        } while (existingNames.contains(uniqueName));
-        existingNames.add(uniqueName);
-        return uniqueName;
-    }
-
-    public static String generateRandomPostfix() {
-        StringBuilder sb = new StringBuilder(POSTFIX_LENGTH);
-        for (int i = 0; i < POSTFIX_LENGTH; i++) {
-            sb.append(CHARACTERS.charAt(RANDOM.nextInt(CHARACTERS.length())));
-        }
-        return sb.toString();
-    }
-}
\ No newline at end of file
+}
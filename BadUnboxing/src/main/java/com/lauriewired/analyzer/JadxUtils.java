@@ -1,7 +1,9 @@
 package com.lauriewired.analyzer;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -12,6 +14,7 @@ import jadx.api.JadxArgs;
 import jadx.api.JadxDecompiler;
 import jadx.api.JavaClass;
 import jadx.api.ResourceFile;
+import jadx.api.impl.NoOpCodeCache;
 
 public class JadxUtils {
 
@@ -22,6 +25,13 @@ public class JadxUtils {
     }
 
     public JadxDecompiler loadJadx(String apkFilePath) {
+        JadxDecompiler jadx = createJadx(apkFilePath);
+        load(jadx);
+        return jadx;
+    }
+
+    // Not loaded yet, so the caller can arrange for it to be closed before the load starts
+    public JadxDecompiler createJadx(String apkFilePath) {
         File apkFile = new File(apkFilePath);
         File outputDir = new File(apkFile.getParent(), "output_temp");
 
@@ -32,38 +42,72 @@ public class JadxUtils {
         jadxArgs.setSkipResources(true);
         jadxArgs.setDeobfuscationOn(true);
         jadxArgs.setUseSourceNameAsClassAlias(true);
+        // Decompiled code is retained by our own bounded CodeCache instead
+        jadxArgs.setCodeCache(new NoOpCodeCache());
+
+        return new JadxDecompiler(jadxArgs);
+    }
 
-        JadxDecompiler jadx = new JadxDecompiler(jadxArgs);
+    public void load(JadxDecompiler jadx) {
         try {
             jadx.load();
             //jadx.save();
         } catch (Exception e) {
             logger.error("Error loading APK" + e.getMessage());
         }
+    }
 
-        return jadx;
+    /*
+     * The nearest subclass of android.app.Application, so a direct subclass is still preferred.
+     * Support library bases such as MultiDexApplication are looked through: the stub usually
+     * extends those rather than Application itself.
+     */
+    public static JavaClass findApplicationSubclass(ClassIndex classIndex, SimpleLogger logger, AnalysisResult result) {
+        for (JavaClass javaClass : classIndex.getSubclasses("android.app.Application")) {
+            if (isSupportLibraryClass(javaClass.getFullName())) {
+                continue;
+            }
+            logger.log("Found Application subclass: " + javaClass.getFullName());
+            result.applicationSubclassPackageName = javaClass.getPackage();
+            return javaClass;
+        }
+        return null;
+    }
+
+    private static boolean isSupportLibraryClass(String className) {
+        return className.startsWith("androidx.") || className.startsWith("android.support.");
     }
 
-    public JavaClass getJavaClassByName(JadxDecompiler jadx, String className) {
-        for (JavaClass javaClass : jadx.getClasses()) {
-            if (javaClass.getFullName().equals(className)) {
-                return javaClass;
+    // Reads the manifest from the mapped APK, jadx is only used if that fails
+    public Set<String> getManifestClasses(MappedApk apk, JadxDecompiler jadx) throws Exception {
+        if (apk != null) {
+            try {
+                ByteBuffer manifest = apk.getEntry("AndroidManifest.xml");
+                if (manifest != null) {
+                    return BinaryManifest.getComponentClasses(manifest);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Could not read mapped AndroidManifest.xml, falling back to jadx: " + e);
             }
         }
-        return null; // Class not found
+        return getManifestClasses(apk == null ? null : apk.getPath(), jadx);
     }
 
-    public static JavaClass findApplicationSubclass(JadxDecompiler jadx, SimpleLogger logger, AnalysisResult result) {
-        for (JavaClass javaClass : jadx.getClasses()) {
-            var superClass = javaClass.getClassNode().getSuperClass();
-            if (superClass == null) continue;
-            if (superClass.toString().equals("android.app.Application")) {
-                logger.log("Found Application subclass: " + javaClass.getFullName());
-                result.applicationSubclassPackageName = javaClass.getPackage();
-                return javaClass;
+    // Class files of all dex entries of the mapped APK, jadx is only used if that fails
+    public Set<String> getDexClasses(MappedApk apk, JadxDecompiler jadx) throws Exception {
+        if (apk != null && !apk.getDexEntryNames().isEmpty()) {
+            try {
+                Set<String> classNames = new HashSet<>();
+                for (String dexName : apk.getDexEntryNames()) {
+                    new DexFile(apk.getEntry(dexName)).forEachClassDescriptor(
+                            descriptor -> classNames.add(DexFile.descriptorToClassFile(descriptor)));
+                }
+                return classNames;
+            } catch (IOException | RuntimeException e) {
+                logger.error("Could not read mapped dex files, falling back to jadx: " + e);
             }
         }
-        return null;
+        return getDexClasses(apk == null ? null : apk.getPath(), jadx);
     }
 
     public Set<String> getManifestClasses(String apkFilePath, JadxDecompiler jadx) throws Exception {
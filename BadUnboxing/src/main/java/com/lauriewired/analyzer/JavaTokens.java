@@ -0,0 +1,180 @@
+package com.lauriewired.analyzer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Lightweight tokenizer for decompiled Java. It only knows what the code rewriters need:
+ * identifiers, literals and single-character punctuation. Whitespace and comments are dropped,
+ * so a gap between the end of one token and the start of the next marks either of them.
+ */
+public class JavaTokens {
+    public enum Kind { IDENTIFIER, NUMBER, STRING, CHAR, PUNCTUATION }
+
+    private static final Set<String> keywords = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp",
+            "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void",
+            "volatile", "while", "true", "false", "null")));
+
+    private static final Set<String> primitiveTypes = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "boolean", "byte", "char", "double", "float", "int", "long", "short", "void")));
+
+    private final CharSequence code;
+    private Kind[] kinds = new Kind[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int size;
+
+    private JavaTokens(CharSequence code) {
+        this.code = code;
+    }
+
+    public static JavaTokens tokenize(CharSequence code, int from, int to) {
+        JavaTokens tokens = new JavaTokens(code);
+        tokens.scan(from, to, false);
+        return tokens;
+    }
+
+    // Tokens from just after an opening brace up to and including the brace that closes it
+    public static JavaTokens tokenizeBlock(CharSequence code, int from) {
+        JavaTokens tokens = new JavaTokens(code);
+        tokens.scan(from, code.length(), true);
+        return tokens;
+    }
+
+    public static boolean isKeyword(String word) {
+        return keywords.contains(word);
+    }
+
+    public static boolean isPrimitiveType(String word) {
+        return primitiveTypes.contains(word);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Kind kind(int i) {
+        return kinds[i];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int end(int i) {
+        return ends[i];
+    }
+
+    // Position just after the last token, e.g. after the closing brace of a block
+    public int end() {
+        return size == 0 ? 0 : ends[size - 1];
+    }
+
+    public String text(int i) {
+        return code.subSequence(starts[i], ends[i]).toString();
+    }
+
+    public boolean isPunctuation(int i, char c) {
+        return kinds[i] == Kind.PUNCTUATION && code.charAt(starts[i]) == c;
+    }
+
+    // True if whitespace or a comment separates token i from the one before it
+    public boolean spaceBefore(int i) {
+        return i == 0 || starts[i] > ends[i - 1];
+    }
+
+    private void scan(int from, int to, boolean block) {
+        int depth = 1;
+        int pos = from;
+        while (pos < to) {
+            char c = code.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '/' && pos + 1 < to && code.charAt(pos + 1) == '/') {
+                pos = skipLineComment(pos, to);
+            } else if (c == '/' && pos + 1 < to && code.charAt(pos + 1) == '*') {
+                pos = skipBlockComment(pos, to);
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = pos + 1;
+                while (end < to && Character.isJavaIdentifierPart(code.charAt(end))) {
+                    end++;
+                }
+                add(Kind.IDENTIFIER, pos, end);
+                pos = end;
+            } else if (Character.isDigit(c)) {
+                int end = pos + 1;
+                while (end < to && (Character.isLetterOrDigit(code.charAt(end)) || code.charAt(end) == '.'
+                        || code.charAt(end) == '_')) {
+                    end++;
+                }
+                add(Kind.NUMBER, pos, end);
+                pos = end;
+            } else if (c == '"' || c == '\'') {
+                int end = skipQuoted(pos, to, c);
+                add(c == '"' ? Kind.STRING : Kind.CHAR, pos, end);
+                pos = end;
+            } else {
+                add(Kind.PUNCTUATION, pos, pos + 1);
+                pos++;
+                if (block) {
+                    if (c == '{') {
+                        depth++;
+                    } else if (c == '}' && --depth == 0) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private int skipLineComment(int pos, int to) {
+        while (pos < to && code.charAt(pos) != '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int skipBlockComment(int pos, int to) {
+        pos += 2;
+        while (pos + 1 < to && !(code.charAt(pos) == '*' && code.charAt(pos + 1) == '/')) {
+            pos++;
+        }
+        return Math.min(pos + 2, to);
+    }
+
+    // Unterminated literals end at the end of their line
+    private int skipQuoted(int pos, int to, char quote) {
+        pos++;
+        while (pos < to) {
+            char c = code.charAt(pos);
+            if (c == '\\') {
+                pos += 2;
+            } else if (c == quote) {
+                return pos + 1;
+            } else if (c == '\n') {
+                return pos;
+            } else {
+                pos++;
+            }
+        }
+        return to;
+    }
+
+    private void add(Kind kind, int start, int end) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+}
@@ -0,0 +1,273 @@
+package com.lauriewired.analyzer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import jadx.api.JadxDecompiler;
+import jadx.api.JavaClass;
+
+/*
+ * Finds the packages using dynamic code loading and reflection with a single scan of each class,
+ * filling both the DCL and reflection fields of the AnalysisResult. With scanParallelism > 1 the
+ * class list is split into fork-join tasks; hits are still recorded in class order afterwards,
+ * so logs and results are the same as with a sequential scan.
+ */
+public class KeywordDetection {
+    // Smallest slice of the class list worth a fork-join task of its own
+    private static final int MIN_CHUNK_SIZE = 16;
+
+    private static final KeywordScanner scanner;
+    private static final long dclMask;
+    private static final long reflectiveMask;
+    // Cached class hits are only valid for the exact keyword list they were computed with
+    private static final String keywordSetId;
+
+    static {
+        List<String> keywords = new ArrayList<>(DynamicDexLoaderDetection.dynamicDexLoadingKeywords);
+        keywords.addAll(ReflectionRemover.reflectiveKeywords);
+        scanner = new KeywordScanner(keywords);
+        dclMask = scanner.maskOf(DynamicDexLoaderDetection.dynamicDexLoadingKeywords);
+        reflectiveMask = scanner.maskOf(ReflectionRemover.reflectiveKeywords);
+        keywordSetId = String.join(",", keywords);
+    }
+
+    private SimpleLogger logger;
+    private AnalysisResult result;
+    private AnalysisOptions options;
+    private CodeCache codeCache;
+    private CancellationToken token;
+    private ClassHitCache classHitCache;
+    private final Set<String> dclPackageNames = new HashSet<>();
+    private final Set<String> reflectivePackageNames = new HashSet<>();
+
+    public KeywordDetection(SimpleLogger logger, AnalysisResult result, AnalysisOptions options,
+            CodeCache codeCache, CancellationToken token) {
+        this.logger = logger;
+        this.result = result;
+        this.options = options;
+        this.codeCache = codeCache;
+        this.token = token;
+    }
+
+    // Identifies the keyword list, anything cached from keyword hits has to include it in its key
+    static String getKeywordSetId() {
+        return keywordSetId;
+    }
+
+    public void scan(JadxDecompiler jadx) {
+        scan(jadx, null);
+    }
+
+    /*
+     * With the mapped APK at hand, bytecode and lazy detection first check the dex string tables:
+     * every name those modes can match is one of those strings, so if none of them contains a
+     * keyword no class needs to be visited. Source detection also sees names jadx makes up and
+     * always scans every class.
+     */
+    public void scan(JadxDecompiler jadx, MappedApk apk) {
+        if (apk != null && options.detectionMode != AnalysisOptions.DetectionMode.SOURCE
+                && !dexStringsContainKeywords(apk)) {
+            logger.log("No keywords in the dex string tables, skipping the class scan");
+            return;
+        }
+
+        // Cached hits are keyed by an approximate fingerprint, source detection stays exact
+        if (options.classCacheDir != null && options.detectionMode == AnalysisOptions.DetectionMode.LAZY) {
+            try {
+                classHitCache = ClassHitCache.open(options.classCacheDir);
+            } catch (IOException e) {
+                logger.error("Could not open class cache: " + e.getMessage());
+            }
+        }
+
+        List<JavaClass> classes = jadx.getClasses();
+        long[] found = new long[classes.size()];
+        if (options.scanParallelism > 1 && classes.size() > 1) {
+            ForkJoinPool pool = new ForkJoinPool(options.scanParallelism);
+            try {
+                int chunkSize = Math.max(MIN_CHUNK_SIZE, classes.size() / (options.scanParallelism * 8));
+                pool.invoke(new ScanTask(classes, found, 0, classes.size(), chunkSize));
+            } finally {
+                pool.shutdownNow();
+            }
+        } else {
+            scanRange(classes, found, 0, classes.size());
+        }
+
+        // Merge in class order regardless of which task finished first
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] != 0) {
+                JavaClass cls = classes.get(i);
+                recordHits(cls, cls.getPackage(), found[i]);
+            }
+        }
+
+        if (classHitCache != null) {
+            classHitCache.flush();
+        }
+    }
+
+    // Scans classes[from, to), each task writes only its own slots of found
+    private class ScanTask extends RecursiveAction {
+        private final List<JavaClass> classes;
+        private final long[] found;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        ScanTask(List<JavaClass> classes, long[] found, int from, int to, int chunkSize) {
+            this.classes = classes;
+            this.found = found;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                scanRange(classes, found, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ScanTask(classes, found, from, mid, chunkSize),
+                    new ScanTask(classes, found, mid, to, chunkSize));
+        }
+    }
+
+    private void scanRange(List<JavaClass> classes, long[] found, int from, int to) {
+        for (int i = from; i < to; i++) {
+            token.checkpoint();
+            JavaClass cls = classes.get(i);
+            String pkgName = cls.getPackage();
+            if (pkgName == null || pkgName.isEmpty()) {
+                continue;
+            }
+            switch (options.detectionMode) {
+                case BYTECODE:
+                    found[i] = scanBytecode(cls);
+                    break;
+                case LAZY:
+                    found[i] = scanLazy(cls);
+                    break;
+                default:
+                    found[i] = scanSource(cls);
+                    break;
+            }
+        }
+    }
+
+    private long scanSource(JavaClass cls) {
+        if (classHitCache == null) {
+            return scanner.scan(codeCache.getCode(cls));
+        }
+
+        String fingerprint;
+        try {
+            fingerprint = ClassFingerprint.compute(cls.getClassNode(), keywordSetId);
+        } catch (Exception e) {
+            return scanner.scan(codeCache.getCode(cls));
+        }
+        Long cached = classHitCache.get(fingerprint);
+        if (cached != null) {
+            return cached;
+        }
+        long found = scanner.scan(codeCache.getCode(cls));
+        classHitCache.put(fingerprint, found);
+        return found;
+    }
+
+    private boolean dexStringsContainKeywords(MappedApk apk) {
+        try {
+            List<String> dexNames = apk.getDexEntryNames();
+            if (dexNames.isEmpty()) {
+                return true;
+            }
+            for (String dexName : dexNames) {
+                DexFile dex = new DexFile(apk.getEntry(dexName));
+                int count = dex.getStringCount();
+                for (int i = 0; i < count; i++) {
+                    if (i % 4096 == 0) {
+                        token.checkpoint();
+                    }
+                    if (scanner.scan(dex.getString(i)) != 0) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof AnalysisCancelledException) {
+                throw (AnalysisCancelledException) e;
+            }
+            logger.error("Could not read dex string tables: " + e);
+            return true;
+        }
+    }
+
+    // Classes whose bytecode mentions none of the keywords are never decompiled
+    private long scanLazy(JavaClass cls) {
+        if (scanBytecode(cls) == 0) {
+            return 0;
+        }
+        return scanSource(cls);
+    }
+
+    private long scanBytecode(JavaClass cls) {
+        try {
+            long[] found = new long[1];
+            BytecodeReferences.visit(cls.getClassNode(), name -> {
+                if (name != null) {
+                    found[0] |= scanner.scan(name);
+                }
+            });
+            return found[0];
+        } catch (Exception e) {
+            logger.error("Failed to read bytecode of " + cls.getFullName() + ", scanning source instead: " + e);
+            return scanner.scan(codeCache.getCode(cls));
+        }
+    }
+
+    private void recordHits(JavaClass cls, String pkgName, long found) {
+        boolean inApp = pkgName.startsWith(result.packageName)
+                || (result.applicationSubclassPackageName != null
+                        && pkgName.startsWith(result.applicationSubclassPackageName));
+
+        for (int i = 0; i < scanner.size(); i++) {
+            long bit = 1L << i;
+            if ((found & bit) == 0) {
+                continue;
+            }
+            String keyword = scanner.keyword(i);
+            if ((dclMask & bit) != 0) {
+                logger.log(String.format("Found dcl keyword '%s' in class '%s'", keyword, cls.getFullName()));
+                if (inApp) {
+                    result.dclInApp = true;
+                }
+                result.usesDcl = true;
+                dclPackageNames.add(pkgName);
+            }
+            if ((reflectiveMask & bit) != 0) {
+                logger.log(String.format("Found reflective keyword '%s' in class '%s'", keyword, cls.getFullName()));
+                if (inApp) {
+                    result.reflectionInApp = true;
+                }
+                result.usesReflection = true;
+                reflectivePackageNames.add(pkgName);
+            }
+        }
+    }
+
+    public List<String> getDclPackages() {
+        return dclPackageNames.stream().sorted().toList();
+    }
+
+    public List<String> getReflectivePackages() {
+        return reflectivePackageNames.stream().sorted().toList();
+    }
+}
@@ -0,0 +1,128 @@
+package com.lauriewired.analyzer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+/*
+ * Aho-Corasick automaton over a fixed keyword set. Scanning is a single linear pass over the
+ * input no matter how many keywords are registered, and the result is a bitmask where bit i is
+ * set if keyword(i) occurs anywhere in the input.
+ */
+public class KeywordScanner {
+    // Keywords are plain ASCII identifiers, anything outside this range resets to the root state
+    private static final int ALPHABET_SIZE = 128;
+    private static final int MAX_KEYWORDS = 64;
+
+    private final String[] keywords;
+    private final int[][] transitions;
+    private final long[] outputs;
+    private final long allKeywordsMask;
+
+    public KeywordScanner(Collection<String> keywordSet) {
+        if (keywordSet.size() > MAX_KEYWORDS) {
+            throw new IllegalArgumentException("At most " + MAX_KEYWORDS + " keywords are supported");
+        }
+        this.keywords = keywordSet.toArray(new String[0]);
+        this.allKeywordsMask = keywords.length == MAX_KEYWORDS ? -1L : (1L << keywords.length) - 1;
+
+        // Build the trie
+        List<int[]> gotoTable = new ArrayList<>();
+        List<Long> outputTable = new ArrayList<>();
+        gotoTable.add(newState());
+        outputTable.add(0L);
+        for (int i = 0; i < keywords.length; i++) {
+            int state = 0;
+            for (char c : keywords[i].toCharArray()) {
+                if (c >= ALPHABET_SIZE) {
+                    throw new IllegalArgumentException("Non-ASCII keyword: " + keywords[i]);
+                }
+                if (gotoTable.get(state)[c] == -1) {
+                    gotoTable.get(state)[c] = gotoTable.size();
+                    gotoTable.add(newState());
+                    outputTable.add(0L);
+                }
+                state = gotoTable.get(state)[c];
+            }
+            outputTable.set(state, outputTable.get(state) | (1L << i));
+        }
+
+        // Turn the trie into a full DFA by resolving failure links breadth first
+        int stateCount = gotoTable.size();
+        this.transitions = gotoTable.toArray(new int[stateCount][]);
+        this.outputs = new long[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            outputs[i] = outputTable.get(i);
+        }
+        int[] failure = new int[stateCount];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            int next = transitions[0][c];
+            if (next == -1) {
+                transitions[0][c] = 0;
+            } else {
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] |= outputs[failure[state]];
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                int next = transitions[state][c];
+                if (next == -1) {
+                    transitions[state][c] = transitions[failure[state]][c];
+                } else {
+                    failure[next] = transitions[failure[state]][c];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private static int[] newState() {
+        int[] state = new int[ALPHABET_SIZE];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    public long scan(CharSequence text) {
+        long found = 0;
+        int state = 0;
+        for (int i = 0, len = text.length(); i < len; i++) {
+            char c = text.charAt(i);
+            state = c < ALPHABET_SIZE ? transitions[state][c] : 0;
+            long out = outputs[state];
+            if (out != 0) {
+                found |= out;
+                if (found == allKeywordsMask) {
+                    // Nothing left to find, no need to read the rest of the input
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    public int size() {
+        return keywords.length;
+    }
+
+    public String keyword(int index) {
+        return keywords[index];
+    }
+
+    // Bitmask with the bits of every keyword in the given subset
+    public long maskOf(Collection<String> subset) {
+        long mask = 0;
+        for (int i = 0; i < keywords.length; i++) {
+            if (subset.contains(keywords[i])) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+}
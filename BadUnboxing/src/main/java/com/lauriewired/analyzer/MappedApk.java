@@ -0,0 +1,206 @@
+package com.lauriewired.analyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * Read-only view of an APK through a memory mapping. Entries are located through the zip central
+ * directory; a STORED entry is returned as a slice of the mapping (no copy at all), a DEFLATED one
+ * is inflated into a direct buffer, so neither ends up on the Java heap. A DEFLATED entry is
+ * inflated only once, later lookups (e.g. the packer check and the keyword pre-filter reading the
+ * same dex) share that buffer. Zip64 archives are not supported, callers fall back to jadx for
+ * those.
+ *
+ * The mapping and the inflated buffers are released by the GC once no buffer refers to them
+ * anymore, close() closes the file and drops the inflated buffers.
+ */
+public class MappedApk implements Closeable {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIR_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIR_SIZE = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static class Entry {
+        final int method;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+
+        Entry(int method, long compressedSize, long size, long localHeaderOffset) {
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+
+    private final String path;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, ByteBuffer> inflatedEntries = new HashMap<>();
+
+    private MappedApk(String path, FileChannel channel, MappedByteBuffer map) {
+        this.path = path;
+        this.channel = channel;
+        this.map = map;
+        map.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static MappedApk open(String apkFilePath) throws IOException {
+        FileChannel channel = FileChannel.open(Path.of(apkFilePath), StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("APK too large to map: " + channel.size() + " bytes");
+            }
+            MappedApk apk = new MappedApk(apkFilePath, channel,
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            apk.readCentralDirectory();
+            return apk;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Malformed zip: " + e, e);
+        }
+    }
+
+    private void readCentralDirectory() throws IOException {
+        int eocd = findEndOfCentralDirectory();
+        int count = map.getShort(eocd + 10) & 0xFFFF;
+        long cdOffset = map.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || cdOffset == ZIP64_MARKER) {
+            throw new IOException("Zip64 archives are not supported");
+        }
+
+        int pos = (int) cdOffset;
+        for (int i = 0; i < count; i++) {
+            if (map.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Bad central directory entry at " + pos);
+            }
+            int method = map.getShort(pos + 10) & 0xFFFF;
+            long compressedSize = map.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = map.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = map.getShort(pos + 28) & 0xFFFF;
+            int extraLength = map.getShort(pos + 30) & 0xFFFF;
+            int commentLength = map.getShort(pos + 32) & 0xFFFF;
+            long localHeaderOffset = map.getInt(pos + 42) & 0xFFFFFFFFL;
+
+            byte[] name = new byte[nameLength];
+            map.get(pos + CENTRAL_HEADER_SIZE, name);
+            // The first entry wins, like on the device
+            entries.putIfAbsent(new String(name, StandardCharsets.UTF_8),
+                    new Entry(method, compressedSize, size, localHeaderOffset));
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private int findEndOfCentralDirectory() throws IOException {
+        int limit = Math.max(0, map.capacity() - END_OF_CENTRAL_DIR_SIZE - MAX_COMMENT_LENGTH);
+        for (int pos = map.capacity() - END_OF_CENTRAL_DIR_SIZE; pos >= limit; pos--) {
+            if (map.getInt(pos) == END_OF_CENTRAL_DIR_SIGNATURE) {
+                return pos;
+            }
+        }
+        throw new IOException("No end of central directory record in " + path);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // classes.dex, classes2.dex, ... in the order the runtime loads them
+    public List<String> getDexEntryNames() {
+        List<String> names = new ArrayList<>();
+        if (entries.containsKey("classes.dex")) {
+            names.add("classes.dex");
+        }
+        for (int i = 2; entries.containsKey("classes" + i + ".dex"); i++) {
+            names.add("classes" + i + ".dex");
+        }
+        return names;
+    }
+
+    // Little-endian buffer over the uncompressed entry, null if there is no such entry
+    public synchronized ByteBuffer getEntry(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer inflated = inflatedEntries.get(name);
+        if (inflated != null) {
+            // Own position and limit for every caller, the content is shared
+            return inflated.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (entry.size == ZIP64_MARKER || entry.compressedSize == ZIP64_MARKER
+                || entry.localHeaderOffset == ZIP64_MARKER) {
+            throw new IOException("Zip64 entries are not supported: " + name);
+        }
+
+        int header = (int) entry.localHeaderOffset;
+        if (map.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Bad local header for " + name);
+        }
+        // The local header may carry a different extra field than the central directory
+        int dataStart = header + LOCAL_HEADER_SIZE
+                + (map.getShort(header + 26) & 0xFFFF) + (map.getShort(header + 28) & 0xFFFF);
+        ByteBuffer data = map.duplicate();
+        data.position(dataStart).limit(Math.toIntExact(dataStart + entry.compressedSize));
+        data = data.slice();
+
+        switch (entry.method) {
+            case STORED:
+                return data.order(ByteOrder.LITTLE_ENDIAN);
+            case DEFLATED:
+                inflated = inflate(name, data, entry.size);
+                inflatedEntries.put(name, inflated);
+                return inflated.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            default:
+                throw new IOException("Unsupported compression method " + entry.method + " for " + name);
+        }
+    }
+
+    private static ByteBuffer inflate(String name, ByteBuffer compressed, long size) throws IOException {
+        ByteBuffer out = ByteBuffer.allocateDirect(Math.toIntExact(size));
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            while (!inflater.finished() && out.hasRemaining()) {
+                if (inflater.inflate(out) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated entry " + name);
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry " + name + ": " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        out.flip();
+        return out.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        inflatedEntries.clear();
+        channel.close();
+    }
+}
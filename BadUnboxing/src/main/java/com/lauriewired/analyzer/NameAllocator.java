@@ -0,0 +1,20 @@
+package com.lauriewired.analyzer;
+
+/*
+ * Hands out the identifiers the unpacker generator renames things to. Names are
+ * prefix + original name + "_" + a counter in base 36. The counter never repeats and never
+ * contains '_', so two names can't collide and nothing has to be retried. One allocator serves one
+ * analysis on one thread, so the same APK always gets the same names.
+ */
+public class NameAllocator {
+    private int counter = 0;
+
+    public String allocate(String prefix, String originalName) {
+        return prefix + originalName + "_" + nextPostfix();
+    }
+
+    // Postfix for names that aren't derived from an existing identifier, e.g. temporaries
+    public String nextPostfix() {
+        return Integer.toString(++counter, 36);
+    }
+}
@@ -0,0 +1,79 @@
+package com.lauriewired.analyzer;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.management.ThreadMXBean;
+
+/*
+ * Measures consecutive phases of one analysis. Each lap() closes the phase that started at the
+ * previous lap (or at construction) and records its wall time, CPU time and allocated bytes.
+ * CPU time and allocations are those of the calling thread only.
+ */
+public class PhaseTimer {
+    private static final ThreadMXBean threadBean = threadBean();
+
+    private final List<PhaseTiming> timings = new ArrayList<>();
+    private long wallStart;
+    private long cpuStart;
+    private long allocatedStart;
+
+    public PhaseTimer() {
+        restart();
+    }
+
+    private static ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof ThreadMXBean)) {
+            return null;
+        }
+        ThreadMXBean sunBean = (ThreadMXBean) bean;
+        try {
+            if (sunBean.isThreadCpuTimeSupported() && !sunBean.isThreadCpuTimeEnabled()) {
+                sunBean.setThreadCpuTimeEnabled(true);
+            }
+            if (sunBean.isThreadAllocatedMemorySupported() && !sunBean.isThreadAllocatedMemoryEnabled()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            // Measured as -1 below
+        }
+        return sunBean;
+    }
+
+    private void restart() {
+        wallStart = System.nanoTime();
+        cpuStart = cpuTime();
+        allocatedStart = allocatedBytes();
+    }
+
+    public void lap(String phase) {
+        long wall = System.nanoTime() - wallStart;
+        long cpu = cpuTime();
+        long allocated = allocatedBytes();
+        timings.add(new PhaseTiming(phase, wall,
+                cpu < 0 || cpuStart < 0 ? -1 : cpu - cpuStart,
+                allocated < 0 || allocatedStart < 0 ? -1 : allocated - allocatedStart));
+        restart();
+    }
+
+    public List<PhaseTiming> getTimings() {
+        return new ArrayList<>(timings);
+    }
+
+    private static long cpuTime() {
+        if (threadBean == null || !threadBean.isCurrentThreadCpuTimeSupported()) {
+            return -1;
+        }
+        return threadBean.getCurrentThreadCpuTime();
+    }
+
+    private static long allocatedBytes() {
+        if (threadBean == null || !threadBean.isThreadAllocatedMemorySupported()
+                || !threadBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
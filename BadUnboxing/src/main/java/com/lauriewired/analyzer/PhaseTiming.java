@@ -0,0 +1,32 @@
+package com.lauriewired.analyzer;
+
+// Cost of one analysis phase, measured on the thread that ran it
+public class PhaseTiming {
+    public final String phase;
+    public final long wallNanos;
+    // -1 if the JVM does not support thread CPU time or allocation measurement
+    public final long cpuNanos;
+    public final long allocatedBytes;
+
+    public PhaseTiming(String phase, long wallNanos, long cpuNanos, long allocatedBytes) {
+        this.phase = phase;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    // <phase>,<wall ns>,<cpu ns>,<allocated bytes>
+    @Override
+    public String toString() {
+        return phase + "," + wallNanos + "," + cpuNanos + "," + allocatedBytes;
+    }
+
+    public static PhaseTiming parse(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Invalid phase timing: " + value);
+        }
+        return new PhaseTiming(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                Long.parseLong(parts[3]));
+    }
+}
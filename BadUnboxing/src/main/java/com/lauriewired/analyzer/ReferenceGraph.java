@@ -0,0 +1,67 @@
+package com.lauriewired.analyzer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import jadx.api.JavaClass;
+import jadx.core.dex.nodes.ClassNode;
+
+/*
+ * Which classes of an APK each class refers to, taken from the dependencies jadx collects from
+ * the IR while loading (types in signatures, fields and instructions). Only edges to other
+ * classes of the same package are kept, and R classes are left out; that is the part of an
+ * APK the unpacker is generated from.
+ */
+public class ReferenceGraph {
+    private final Map<JavaClass, List<JavaClass>> edges = new HashMap<>();
+
+    private ReferenceGraph() {
+    }
+
+    public static ReferenceGraph build(ClassIndex classIndex) {
+        ReferenceGraph graph = new ReferenceGraph();
+        for (JavaClass cls : classIndex.getClasses()) {
+            List<ClassNode> dependencies = cls.getClassNode().getDependencies();
+            if (dependencies == null || dependencies.isEmpty()) {
+                continue;
+            }
+            List<JavaClass> targets = new ArrayList<>();
+            for (ClassNode dependency : dependencies) {
+                JavaClass target = classIndex.getClassByName(dependency.getRawName());
+                if (target != null && target != cls && !target.getName().equals("R")
+                        && cls.getPackage().equals(target.getPackage())) {
+                    targets.add(target);
+                }
+            }
+            graph.edges.put(cls, targets);
+        }
+        return graph;
+    }
+
+    public List<JavaClass> getReferencedClasses(JavaClass cls) {
+        return edges.getOrDefault(cls, Collections.emptyList());
+    }
+
+    // start and every class reachable from it, in breadth-first order
+    public Set<JavaClass> reachableFrom(JavaClass start) {
+        Set<JavaClass> reached = new LinkedHashSet<>();
+        Queue<JavaClass> queue = new ArrayDeque<>();
+        reached.add(start);
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            for (JavaClass next : getReferencedClasses(queue.remove())) {
+                if (reached.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        return reached;
+    }
+}
@@ -1,22 +1,30 @@
 package com.lauriewired.analyzer;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import jadx.api.JadxDecompiler;
-import jadx.api.JavaClass;
 
+/*
+ * Comments out reflective code in the generated unpacker and everything that depends on it. A
+ * method returning a reflective value is commented out as a whole and its name becomes reflective
+ * too; any other line using a reflective value is commented out and the variable it assigns
+ * becomes reflective. Reflective values are propagated through a worklist until nothing new turns
+ * up.
+ *
+ * The code is split into lines once. An index from identifiers to the lines they occur on limits
+ * every step to the lines that can use the value at hand, and the code is rewritten once at the
+ * end.
+ */
 public class ReflectionRemover {
-    private static Stack<String> reflectiveValues = new Stack<>();
-    private static final Set<String> analyzedValues = new HashSet<>();
-
-    public static final Set<String> reflectiveKeywords = new HashSet<>(Arrays.asList(
+    public static final Set<String> reflectiveKeywords = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
         "getMethod",
         "invoke",
         "getDeclaredField",
@@ -25,193 +33,263 @@ public class ReflectionRemover {
         "setAccessible",
         "getApplicationContext",
         "newInstance"
-    ));
+    )));
+
+    // Characters allowed around a value, as in CodePatterns.surroundedIdentifier
+    private static final String VALUE_BEFORE = "[] \t\n\013\f\r.()";
+    private static final String VALUE_AFTER = VALUE_BEFORE + ",;";
 
     private SimpleLogger logger;
-    private AnalysisResult result;
 
-    public ReflectionRemover(SimpleLogger logger, AnalysisResult result) {
+    // State of one removeReflection call, per instance so concurrent analyses don't share it
+    private String[] lines;
+    private boolean[] commentedLines;
+    private Map<String, List<Integer>> identifierLines;
+    // Index of the innermost method each line belongs to, -1 outside of methods
+    private int[] lineMethods;
+    private List<Method> methods;
+    private final Deque<String> reflectiveValues = new ArrayDeque<>();
+    private final Set<String> analyzedValues = new HashSet<>();
+
+    // Lines from a renamed method, main or onCreate signature up to the brace closing the body
+    private static class Method {
+        final String name;
+        final int parent;
+        final int startLine;
+        int endLine;
+        boolean removed;
+
+        Method(String name, int parent, int startLine) {
+            this.name = name;
+            this.parent = parent;
+            this.startLine = startLine;
+        }
+    }
+
+    public ReflectionRemover(SimpleLogger logger) {
         this.logger = logger;
-        this.result = result;
     }
 
-    public void removeReflection(StringBuilder javaCode) {       
-        // Initial comment out of reflection
+    public void removeReflection(StringBuilder javaCode) {
+        lines = javaCode.toString().split("\n");
+        commentedLines = new boolean[lines.length];
+        indexIdentifiers();
+        findMethods();
+
+        // Initial comment out of reflection, methods returning it first
         for (String keyword : reflectiveKeywords) {
-            commentOutMethodUsingReflection(javaCode, surroundWithRegex(keyword));
-            result.usesReflection = true;
+            commentOutMethodsReturning(keyword);
         }
         for (String keyword : reflectiveKeywords) {
-            commentOutLineUsingReflection(javaCode, surroundWithRegex(keyword));
-            result.usesReflection = true;
+            commentOutLinesUsing(keyword);
         }
 
-        // Add while loop here to keep iterating through reflectiveMethods and reflectiveVariables while they have values
+        // Keep going through reflective methods and variables until no new ones turn up
         while (!reflectiveValues.isEmpty()) {
             String value = reflectiveValues.pop();
-            if (!analyzedValues.contains(value)) {
-                commentOutMethodUsingReflection(javaCode, surroundWithRegex(value));
-                commentOutLineUsingReflection(javaCode, surroundWithRegex(value));
-                analyzedValues.add(value);
+            if (analyzedValues.add(value)) {
+                commentOutMethodsReturning(value);
+                commentOutLinesUsing(value);
             }
         }
+
+        writeCode(javaCode);
     }
 
-    public static List<String> getReflectivePackages(JadxDecompiler jadx, SimpleLogger logger, AnalysisResult result) {
-        HashSet<String> packageNames = new HashSet<>();
-        for (JavaClass cls : jadx.getClasses()) {
-            String pkgName = cls.getPackage();
-            if (pkgName == null || pkgName.isEmpty()) {
+    private void commentOutLinesUsing(String value) {
+        for (int i : linesMentioning(value)) {
+            String line = lines[i];
+            String trimmed = line.trim();
+            if (commentedLines[i] || isInRemovedMethod(i) || trimmed.startsWith("//") || trimmed.startsWith("import")
+                    || CodePatterns.MEMBER_DECLARATION_LINE.matcher(line).find()
+                    || !isSurrounded(line, value)) {
                 continue;
             }
-            String classCode = cls.getCode();
-            for (String keyword : reflectiveKeywords) {
-                if (classCode.contains(keyword)) {
-                    String detail = String.format("Found reflective keyword '%s' in class '%s'", keyword, cls.getFullName());
-                    logger.log(detail);
-                    if (pkgName.startsWith(result.packageName)) {
-                        result.reflectionInApp = true;
-                    }
-                    if (result.applicationSubclassPackageName != null && cls.getPackage().startsWith(result.applicationSubclassPackageName)) {
-                        result.reflectionInApp = true;
-                    }
-                    result.usesReflection = true;
-                    packageNames.add(cls.getPackage());
-                }
+
+            // A reflective value on the right of an equal sign makes the variable reflective too
+            Matcher matcher = CodePatterns.VARIABLE_ASSIGNMENT.matcher(line);
+            if (matcher.find()) {
+                String variableName = matcher.group(1);
+                reflectiveValues.push(variableName);
+                logger.log("Found reflective variable: " + variableName);
             }
+            commentedLines[i] = true;
+
+            String logLine = CodePatterns.LEADING_WHITESPACE.matcher(line).replaceFirst("");
+            logger.log("Commented out reflective line starting with: " + logLine);
         }
-        return packageNames.stream().sorted().toList();
     }
 
-    private String surroundWithRegex(String value) {
-        return "[\\[\\]\\s\\.\\(\\)]" + value + "[\\[\\]\\s\\.\\(\\),;]";
+    private void commentOutMethodsReturning(String value) {
+        for (int i : linesMentioning(value)) {
+            int method = lineMethods[i];
+            if (method == -1 || methods.get(method).startLine == i || commentedLines[i] || isInRemovedMethod(i)) {
+                continue;
+            }
+            String trimmed = lines[i].trim();
+            if (trimmed.startsWith("return") && isSurrounded(lines[i], value)) {
+                Method removed = methods.get(method);
+                removed.removed = true;
+                reflectiveValues.push(removed.name);
+                logger.log("Removing reflective method: " + removed.name);
+            }
+        }
     }
 
-    private void commentOutLineUsingReflection(StringBuilder javaCode, String keywordRegex) {
-        // Compile the keyword as a regex pattern
-        Pattern keywordPattern = Pattern.compile(keywordRegex);
-
-        // Split the code into lines
-        String[] lines = javaCode.toString().split("\n");
-        StringBuilder modifiedCode = new StringBuilder();
-
-        // Pattern to match variable names
-        Pattern variablePattern = Pattern.compile("([a-zA-Z0-9_]+)\\s*=(\\s*)");
-        Pattern methodPattern = Pattern.compile(".*\\s(public|private|protected|static|void)+\\s.");
-
-        // Iterate over each line
-        for (String line : lines) {
-            Matcher keywordMatcher = keywordPattern.matcher(line);
-            Matcher methodMatch = methodPattern.matcher(line);
-
-            if (keywordMatcher.find() && !methodMatch.find() && !line.trim().startsWith("//") && !line.trim().startsWith("import")) {
-                // Check if the reflective call is on the right of an equal sign
-                Matcher matcher = variablePattern.matcher(line);
-                if (matcher.find()) {
-                    if (!matcher.group(2).matches(".*" + keywordRegex + ".*")) {
-                        // Parse out the variable name
-                        String variableName = matcher.group(1);
-                        reflectiveValues.push(variableName);
-
-                        logger.log("Found reflective variable: " + variableName);
-                    }
-                }
-                // Comment out the line if it contains the keyword and is not already commented out
-                modifiedCode.append("// ").append(line).append(" // BadUnboxing: Line contains reflection and was commented out\n");
-
-                // Don't be too noisy so print up to the first 30 chars of the line
-                String logLine = line.replaceFirst("^\\s+", "");
-                logger.log("Commented out reflective line starting with: " + logLine);
+    private boolean isInRemovedMethod(int line) {
+        for (int method = lineMethods[line]; method != -1; method = methods.get(method).parent) {
+            if (methods.get(method).removed) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-                // If the line ends with an opening brace, add "if (true) {"
-                if (line.trim().endsWith("{")) {
-                    modifiedCode.append("if (true) {\n"); // We just need a dummy placeholder
-                }
-            } else {
-                modifiedCode.append(line).append("\n");
+    /*
+     * Whether value occurs in line between brackets, parentheses, dots or whitespace, or before a
+     * comma or semicolon. Same test as CodePatterns.surroundedIdentifier without compiling a
+     * pattern per value; linesMentioning has already narrowed the lines down.
+     */
+    private static boolean isSurrounded(String line, String value) {
+        int start = line.indexOf(value, 1);
+        while (start != -1 && start < line.length()) {
+            int end = start + value.length();
+            if (end < line.length() && VALUE_BEFORE.indexOf(line.charAt(start - 1)) != -1
+                    && VALUE_AFTER.indexOf(line.charAt(end)) != -1) {
+                return true;
             }
+            start = line.indexOf(value, start + 1);
         }
+        return false;
+    }
 
-        // Replace the original code with the modified code
-        javaCode.setLength(0);
-        javaCode.append(modifiedCode);
+    // Lines on which value occurs as a whole identifier, in order; the only lines isSurrounded can match
+    private List<Integer> linesMentioning(String value) {
+        List<Integer> indexed = identifierLines.get(value);
+        if (indexed != null) {
+            return indexed;
+        }
+        if (isIdentifier(value)) {
+            return Collections.emptyList();
+        }
+        // Not something the index can answer for, check every line
+        List<Integer> all = new ArrayList<>(lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            all.add(i);
+        }
+        return all;
     }
 
-    // omg it works. never change this
-    private void commentOutMethodUsingReflection(StringBuilder javaCode, String keywordRegex) {
-        // Compile the keyword as a regex pattern
-        Pattern keywordPattern = Pattern.compile(keywordRegex);
-
-        // Split the code into lines
-        String[] lines = javaCode.toString().split("\n");
-        StringBuilder modifiedCode = new StringBuilder();
-
-        boolean returnContainsReflection = false;
-        StringBuilder currentMethod = new StringBuilder();
-        String currentMethodName = null;
-        int braceDepth = -1;
-
-        for (String line : lines) {
-            if (line.trim().matches(".*(public|protected|private|static|\\s)+\\s*\\S+\\s+(method\\S+|main|onCreate)\\(.*\\)\\s+[\\w\\s]*\\{") && !line.trim().startsWith("//")) {
-                // New method start
-                currentMethod.setLength(0);
-                returnContainsReflection = false;
-                currentMethodName = parseMethodName(line);
-                currentMethod.append(line).append("\n");
-
-                braceDepth = 1;
-            } else if (braceDepth == 0) {
-                // This means we've finished a method
-                if (returnContainsReflection) {
-                    commentOutMethod(currentMethod, modifiedCode);
-                    reflectiveValues.push(currentMethodName);
-                    logger.log("Removing reflective method: " + currentMethodName);
-                } else {
-                    modifiedCode.append(currentMethod).append("\n");
-                }
+    private static boolean isIdentifier(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isJavaIdentifierPart(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-                // Still need to handle the latest line
-                modifiedCode.append(line);
-
-                braceDepth = -1; // Reset for new method
-            } else if (braceDepth > 0) {
-                // Keep up with our braces to keep track of the method length
-                for (int i = 0; i < line.length(); i++) {
-                    if (line.charAt(i) == '{') {
-                        braceDepth++;
-                    } else if (line.charAt(i) == '}') {
-                        braceDepth--;
+    private void indexIdentifiers() {
+        identifierLines = new HashMap<>();
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int start = -1;
+            for (int pos = 0; pos <= line.length(); pos++) {
+                boolean part = pos < line.length() && Character.isJavaIdentifierPart(line.charAt(pos));
+                if (part && start == -1) {
+                    start = pos;
+                } else if (!part && start != -1) {
+                    List<Integer> occurrences =
+                            identifierLines.computeIfAbsent(line.substring(start, pos), k -> new ArrayList<>());
+                    // Once per line, and lines are visited in order
+                    if (occurrences.isEmpty() || occurrences.get(occurrences.size() - 1) != i) {
+                        occurrences.add(i);
                     }
+                    start = -1;
                 }
+            }
+        }
+    }
+
+    // Method spans are fixed by the code as generated, commenting out lines doesn't move them
+    private void findMethods() {
+        methods = new ArrayList<>();
+        lineMethods = new int[lines.length];
+        Deque<int[]> open = new ArrayDeque<>(); // method index, brace depth before its signature
+        int depth = 0;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            String trimmed = line.trim();
+            if (!trimmed.startsWith("//") && CodePatterns.METHOD_START.matcher(trimmed).matches()) {
+                int parent = open.isEmpty() ? -1 : open.peek()[0];
+                methods.add(new Method(parseMethodName(line), parent, i));
+                open.push(new int[] { methods.size() - 1, depth });
+            }
+            lineMethods[i] = open.isEmpty() ? -1 : open.peek()[0];
 
-                // Check if the line is a return statement and contains the keyword
-                Matcher keywordMatcher = keywordPattern.matcher(line);
-                if (line.trim().startsWith("return") && keywordMatcher.find() && !line.trim().startsWith("//")) {
-                    returnContainsReflection = true;
+            for (int c = 0; c < line.length(); c++) {
+                if (line.charAt(c) == '{') {
+                    depth++;
+                } else if (line.charAt(c) == '}') {
+                    depth--;
                 }
-                currentMethod.append(line).append("\n");
-            } else {
-                modifiedCode.append(line).append("\n");
+            }
+            while (!open.isEmpty() && depth <= open.peek()[1]) {
+                methods.get(open.pop()[0]).endLine = i;
             }
         }
+        while (!open.isEmpty()) {
+            methods.get(open.pop()[0]).endLine = lines.length - 1;
+        }
+    }
 
-        // Replace the original code with the modified code
+    private void writeCode(StringBuilder javaCode) {
         javaCode.setLength(0);
-        javaCode.append(modifiedCode);
+        for (int i = 0; i < lines.length; i++) {
+            String prefix = removedMethodPrefix(lineMethods[i]);
+            String line = lines[i];
+            if (commentedLines[i]) {
+                javaCode.append(prefix).append("// ").append(line)
+                        .append(" // BadUnboxing: Line contains reflection and was commented out\n");
+                // A commented out opening brace still needs its block
+                if (line.trim().endsWith("{")) {
+                    javaCode.append(prefix).append("if (true) {\n"); // We just need a dummy placeholder
+                }
+            } else {
+                javaCode.append(prefix).append(line).append("\n");
+            }
+
+            // Close the methods ending on this line, innermost first
+            for (int method = lineMethods[i]; method != -1 && methods.get(method).endLine == i;
+                    method = methods.get(method).parent) {
+                if (methods.get(method).removed) {
+                    String outerPrefix = removedMethodPrefix(methods.get(method).parent);
+                    javaCode.append(outerPrefix)
+                            .append("// BadUnboxing: Method contains reflection in return statement and was commented out\n")
+                            .append(outerPrefix).append("\n");
+                }
+            }
+        }
+    }
+
+    // One "// BadUnboxing " per removed method around the line
+    private String removedMethodPrefix(int method) {
+        String prefix = "";
+        for (; method != -1; method = methods.get(method).parent) {
+            if (methods.get(method).removed) {
+                prefix += "// BadUnboxing ";
+            }
+        }
+        return prefix;
     }
 
     private static String parseMethodName(String line) {
         // Simple regex to extract the method name
         String methodSignature = line.trim().split("\\(")[0].trim();
-        String[] parts = methodSignature.split("\\s+");
+        String[] parts = CodePatterns.WHITESPACE_RUN.split(methodSignature);
         return parts[parts.length - 1];
     }
-
-    private static void commentOutMethod(StringBuilder methodCode, StringBuilder modifiedCode) {
-        String[] lines = methodCode.toString().split("\n");
-        for (String line : lines) {
-            modifiedCode.append("// BadUnboxing ").append(line).append("\n");
-        }
-        modifiedCode.append("// BadUnboxing: Method contains reflection in return statement and was commented out\n\n");
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+package com.lauriewired.analyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/*
+ * On-disk cache of AnalysisResults keyed by the content of an APK's dex files, so repackaged
+ * duplicates are analyzed once. AndroidManifest.xml is part of the key as well because the
+ * package name it declares decides the *_in_app fields. The key is salted with everything else
+ * the result depends on: the detection mode, the keyword list, the tool version and
+ * FORMAT_VERSION. Entries are plain result files (see AnalysisResult.getFileRepresentation)
+ * sharded by the first two hex digits of the key.
+ */
+public class ResultCache {
+    // Bump when the result format or the detection logic changes without a new release version
+    private static final int FORMAT_VERSION = 3;
+
+    private final Path cacheDir;
+
+    public ResultCache(String cacheDir) {
+        this.cacheDir = Path.of(cacheDir);
+    }
+
+    public static String key(String apkFilePath, AnalysisOptions options) throws IOException {
+        MessageDigest digest = HashUtils.newSha256();
+        digest.update(salt(options).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        try (ZipFile zip = new ZipFile(apkFilePath)) {
+            List<String> names = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (isKeyEntry(name)) {
+                    names.add(name);
+                }
+            }
+            // Zip entry order is up to the packer, the key must not depend on it
+            Collections.sort(names);
+            for (String name : names) {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+                    HashUtils.update(digest, in);
+                }
+            }
+        } catch (ZipException e) {
+            // Not an APK but a bare dex file
+            digest.update(HashUtils.sha256(Path.of(apkFilePath)).getBytes(StandardCharsets.UTF_8));
+        }
+        return HashUtils.toHex(digest.digest());
+    }
+
+    private static String salt(AnalysisOptions options) {
+        // Only set when running from the packaged jar
+        String toolVersion = ResultCache.class.getPackage().getImplementationVersion();
+        return FORMAT_VERSION + "\t" + (toolVersion != null ? toolVersion : "dev") + "\t"
+                + options.detectionMode + "\t" + KeywordDetection.getKeywordSetId();
+    }
+
+    private static boolean isKeyEntry(String name) {
+        return name.equals("AndroidManifest.xml")
+                || (name.startsWith("classes") && name.endsWith(".dex") && name.indexOf('/') == -1);
+    }
+
+    private Path entryPath(String key) {
+        return cacheDir.resolve(key.substring(0, 2)).resolve(key + ".txt");
+    }
+
+    // Returns null on a cache miss
+    public AnalysisResult get(String key) {
+        Path entry = entryPath(key);
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try {
+            return AnalysisResult.fromFileRepresentation(Files.readString(entry, StandardCharsets.UTF_8));
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public void put(String key, AnalysisResult result) throws IOException {
+        Path entry = entryPath(key);
+        Files.createDirectories(entry.getParent());
+        // Write then rename so concurrent readers never see a partial entry
+        Path tmp = Files.createTempFile(entry.getParent(), key, ".tmp");
+        try {
+            Files.writeString(tmp, result.getFileRepresentation(), StandardCharsets.UTF_8);
+            Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
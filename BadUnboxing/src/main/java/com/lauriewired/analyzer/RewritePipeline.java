@@ -0,0 +1,77 @@
+package com.lauriewired.analyzer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Applies a chain of line rules to generated code in a single walk. Every input line goes through
+ * the rules in the order they were added, each seeing what the previous ones made of it, and the
+ * output is assembled once at the end together with the insertions rules queued along the way.
+ */
+public class RewritePipeline {
+    public interface Rule {
+        // Rewrites one line (without its newline), the result may span several lines
+        String rewriteLine(String line, int lineNumber);
+
+        // Called once after the last line, rules that need to see the whole code queue insertions here
+        default void finish(RewritePipeline pipeline) {
+        }
+    }
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final Map<Integer, String> insertions = new HashMap<>();
+
+    public RewritePipeline add(Rule rule) {
+        rules.add(rule);
+        return this;
+    }
+
+    /*
+     * Inserts text at the start of the line following lineNumber. Like StringBuilder.insert at that
+     * index, text queued later for the same line ends up before the earlier text.
+     */
+    public void insertAfterLine(int lineNumber, String text) {
+        insertions.merge(lineNumber, text, (earlier, later) -> later + earlier);
+    }
+
+    public void rewrite(StringBuilder code) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        int length = code.length();
+        while (start < length) {
+            int end = code.indexOf("\n", start);
+            if (end == -1) {
+                end = length;
+            }
+            String line = code.substring(start, end);
+            for (Rule rule : rules) {
+                line = rule.rewriteLine(line, lines.size());
+            }
+            lines.add(line);
+            start = end + 1;
+        }
+        boolean trailingNewline = length > 0 && code.charAt(length - 1) == '\n';
+
+        for (Rule rule : rules) {
+            rule.finish(this);
+        }
+
+        code.setLength(0);
+        for (int i = 0; i < lines.size(); i++) {
+            code.append(lines.get(i));
+            if (i < lines.size() - 1 || trailingNewline) {
+                code.append('\n');
+            }
+            String inserted = insertions.get(i);
+            if (inserted != null) {
+                if (i == lines.size() - 1 && !trailingNewline) {
+                    code.append('\n');
+                }
+                code.append(inserted);
+            }
+        }
+        insertions.clear();
+    }
+}
@@ -1,27 +1,206 @@
 package com.lauriewired.analyzer;
 
-import java.nio.file.Files;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/*
+ * Log messages of all analyses go through one bounded queue to a single background writer,
+ * which appends them in batches through one open channel per log file. A message that cannot
+ * be queued within OVERFLOW_WAIT_MILLIS is dropped rather than stalling the analysis. Messages
+ * reaching the writer after the log was closed are dropped and counted as late, a closed log
+ * stays closed.
+ */
 public class SimpleLogger {
+    /*
+            CLOSE - data reaches the disk when the log is closed at the end of the task (default)
+            FSYNC - every written batch is forced to disk
+     */
+    public enum Durability { CLOSE, FSYNC }
+
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+    private static final int MAX_BATCH = 4096;
+    private static final long OVERFLOW_WAIT_MILLIS = 1000;
+
+    private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong overflows = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong late = new AtomicLong();
+
+    static {
+        Thread writer = new Thread(SimpleLogger::writeLoop, "BadUnboxing-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static class Entry {
+        final SimpleLogger logger;
+        final String msg;
+        // Set for the close marker, counted down once the log is on disk
+        final CountDownLatch closed;
+
+        Entry(SimpleLogger logger, String msg, CountDownLatch closed) {
+            this.logger = logger;
+            this.msg = msg;
+            this.closed = closed;
+        }
+    }
+
     private String logPath;
+    private Durability durability;
+    // Only touched by the writer thread
+    private FileChannel channel;
+    private boolean closed;
 
     public SimpleLogger(String logPath) {
+        this(logPath, Durability.CLOSE);
+    }
+
+    public SimpleLogger(String logPath, Durability durability) {
         this.logPath = logPath;
+        this.durability = durability;
     }
 
     public void log(String msg) {
+        //System.out.println(msg);
+        Entry entry = new Entry(this, msg, null);
+        if (queue.offer(entry)) {
+            return;
+        }
+        overflows.incrementAndGet();
         try {
-            //System.out.println(msg);
-            Files.writeString(Path.of(logPath), msg + "\n", StandardOpenOption.CREATE,
-                    StandardOpenOption.APPEND, StandardOpenOption.SYNC);
-        } catch (Exception e) {
-            e.printStackTrace();
+            if (!queue.offer(entry, OVERFLOW_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                dropped.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            dropped.incrementAndGet();
+            Thread.currentThread().interrupt();
         }
     }
 
     public void error(String msg) {
         log("ERROR: " + msg);
     }
+
+    // Waits until everything logged so far is written and forced to disk, then closes the file
+    public void close() {
+        CountDownLatch closed = new CountDownLatch(1);
+        try {
+            queue.put(new Entry(this, null, closed));
+            closed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static String getStatistics() {
+        return String.format("written=%d overflows=%d dropped=%d late=%d",
+                written.get(), overflows.get(), dropped.get(), late.get());
+    }
+
+    private static void writeLoop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        Map<SimpleLogger, StringBuilder> pending = new LinkedHashMap<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+
+            for (Entry entry : batch) {
+                if (entry.logger.closed) {
+                    // Logged after close(), e.g. by an analysis that outlived its deadline
+                    if (entry.closed == null) {
+                        late.incrementAndGet();
+                    } else {
+                        entry.closed.countDown();
+                    }
+                    continue;
+                }
+                if (entry.closed == null) {
+                    pending.computeIfAbsent(entry.logger, l -> new StringBuilder())
+                            .append(entry.msg).append('\n');
+                    continue;
+                }
+                // Everything the logger queued before closing is in this batch or an earlier one
+                StringBuilder text = pending.remove(entry.logger);
+                if (text != null) {
+                    entry.logger.write(text);
+                }
+                entry.logger.closeChannel();
+                entry.closed.countDown();
+            }
+            for (Map.Entry<SimpleLogger, StringBuilder> p : pending.entrySet()) {
+                SimpleLogger logger = p.getKey();
+                logger.write(p.getValue());
+                if (logger.durability == Durability.FSYNC) {
+                    logger.force();
+                }
+            }
+            pending.clear();
+            batch.clear();
+        }
+    }
+
+    private void write(StringBuilder text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(Path.of(logPath), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(text.toString());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            written.addAndGet(lines);
+        } catch (IOException e) {
+            dropped.addAndGet(lines);
+            e.printStackTrace();
+        }
+    }
+
+    private void force() {
+        try {
+            if (channel != null) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeChannel() {
+        closed = true;
+        if (channel == null) {
+            return;
+        }
+        force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
 }
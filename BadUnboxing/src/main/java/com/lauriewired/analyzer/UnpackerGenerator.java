@@ -3,10 +3,14 @@ package com.lauriewired.analyzer;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -17,9 +21,17 @@ public class UnpackerGenerator {
     private String apkPath;
     private File baseDir;
     private int importsRecognized;
-    private final Set<String> existingNames = new HashSet<>();
+    // Renamed identifiers of this unpacker, the same APK always gets the same names
+    private final NameAllocator names = new NameAllocator();
+    // Import statements of all code appended to the unpacker so far
+    private final Set<String> existingImports = new HashSet<>();
     private SimpleLogger logger;
     private AnalysisResult result;
+    private CodeCache codeCache;
+    private CancellationToken token;
+    private ClassIndex classIndex;
+    // Where the generated unpacker code is written, null writes nothing
+    public File unpackerFile = null;
 
     private static final Set<String> standardPackages =
             new HashSet<>(Arrays.asList("android", "com.android", "dalvik", "java", "javax",
@@ -28,34 +40,39 @@ public class UnpackerGenerator {
     private final Set<String> androidOnlyImports =
             new HashSet<>(Arrays.asList("android", "com.android", "dalvik", "com.xiaomi"));
 
-    public UnpackerGenerator(SimpleLogger logger, AnalysisResult result) {
+    public UnpackerGenerator(SimpleLogger logger, AnalysisResult result, CodeCache codeCache,
+            CancellationToken token, ClassIndex classIndex) {
         this.logger = logger;
         this.result = result;
+        this.codeCache = codeCache;
+        this.token = token;
+        this.classIndex = classIndex;
     }
 
-    public ApkAnalysisDetails generateJava(JadxDecompiler jadx, String apkFilePath) {
+    // applicationClass is what JadxUtils.findApplicationSubclass returned for this APK, may be null
+    public ApkAnalysisDetails generateJava(JadxDecompiler jadx, String apkFilePath, JavaClass applicationClass) {
         // Calculating how well BadUnboxing processed this sample
         int recognizedImports = 0;
         String fullQualifiedClassName = "";
 
         // Packing stubs abuse Application subclass for unpacking code
         // Make that our starting point since code runs first upon instantiation
-        JavaClass applicationClass = JadxUtils.findApplicationSubclass(jadx, logger, result);
-
         if (applicationClass != null) {
             try {
-                Set<JavaClass> referencedClasses = new HashSet<>();
-                findReferencedClasses(applicationClass, referencedClasses,
-                        jadx); // Need all classes referenced by code
+                // Need all classes referenced by code
+                Set<JavaClass> referencedClasses = findReferencedClasses(applicationClass);
 
                 // Rename the methods and fields first since we'll have to reload the code before
                 // renaming args and vars
                 for (JavaClass currentClass : referencedClasses) {
-                    IdentifierRenamer.renameMethodsAndFields(currentClass, jadx, existingNames);
+                    token.checkpoint();
+                    IdentifierRenamer.renameMethodsAndFields(currentClass, jadx, names);
                 }
 
                 fullQualifiedClassName = generateUnpackerJava(
                         applicationClass, referencedClasses, apkFilePath, jadx);
+            } catch (AnalysisCancelledException e) {
+                throw e;
             } catch (Exception e) {
                 logger.error("Error generating Unpacker.java" + e);
             }
@@ -68,18 +85,12 @@ public class UnpackerGenerator {
 
     private String generateUnpackerJava(JavaClass applicationClass,
             Set<JavaClass> referencedClasses, String apkFilePath, JadxDecompiler jadx) {
-        StringBuilder javaCode = new StringBuilder();
-
         // Get the APK file
         File apkFile = new File(apkFilePath);
         apkPath = apkFilePath;
 
         // Determine the class name based on the APK file name
-        String apkName = apkFile.getName();
-        int dotIndex = apkName.lastIndexOf('.');
-        String baseName = (dotIndex == -1) ? apkName : apkName.substring(0, dotIndex);
-        String className =
-                "Unpacker_" + (baseName.length() > 10 ? baseName.substring(0, 10) : baseName);
+        String className = unpackerClassName(apkFile.getName());
         baseDir = new File(apkFile.getParent(), className + "_BadUnboxing");
 
         // Extract the package name
@@ -89,20 +100,16 @@ public class UnpackerGenerator {
         // Initialize an ArrayList to store referenced class names
         ArrayList<String> referencedClassNames = new ArrayList<>();
 
-        // Process the main application subclass (entrypoint)
-        String appClassCode = processApplicationSubclass(applicationClass, className, jadx);
-        javaCode.append(appClassCode).append("\n");
-
-        // Process referenced classes
+        // Reloaded one class at a time, so the code has the renamed methods and fields
+        List<Supplier<String>> classSources = new ArrayList<>();
+        classSources.add(() -> codeCache.reload(applicationClass));
         for (JavaClass refClass : referencedClasses) {
             if (refClass != applicationClass) {
-                insertNewClass(javaCode, refClass, jadx);
+                classSources.add(() -> codeCache.reload(refClass));
                 referencedClassNames.add(refClass.getName());
             }
         }
-
-        // Do final cleanups on full code that is now completely added
-        finalProcessing(javaCode, className, packageName);
+        StringBuilder javaCode = generateUnpackerJava(applicationClass.getName(), classSources, className, packageName);
 
         /*
         try {
@@ -112,10 +119,50 @@ public class UnpackerGenerator {
             e.printStackTrace();
         }
         */
+        if (unpackerFile != null) {
+            try {
+                Files.writeString(unpackerFile.toPath(), javaCode, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                logger.error("Error writing unpacker code to " + unpackerFile + ": " + e.getMessage());
+            }
+        }
 
         return packageName + "." + className;
     }
 
+    // Unpacker_ and the first 10 characters of the APK file name without its extension
+    static String unpackerClassName(String apkFileName) {
+        int dotIndex = apkFileName.lastIndexOf('.');
+        String baseName = (dotIndex == -1) ? apkFileName : apkFileName.substring(0, dotIndex);
+        return "Unpacker_" + (baseName.length() > 10 ? baseName.substring(0, 10) : baseName);
+    }
+
+    /*
+     * Assembles the unpacker from the decompiled code of the application subclass (first) and the
+     * classes it references, whose methods and fields are already renamed. From here on everything
+     * is text rewriting, which is also what the unpacker regression check in BadUnboxing-bench runs.
+     */
+    StringBuilder generateUnpackerJava(String applicationClassName, List<Supplier<String>> classSources,
+            String className, String packageName) {
+        StringBuilder javaCode = new StringBuilder();
+
+        // Process the main application subclass (entrypoint)
+        String appClassCode = processApplicationSubclass(classSources.get(0).get(), applicationClassName, className);
+        javaCode.append(appClassCode).append("\n");
+        collectImports(appClassCode);
+
+        // Process referenced classes
+        for (Supplier<String> classSource : classSources.subList(1, classSources.size())) {
+            token.checkpoint();
+            insertNewClass(javaCode, classSource.get());
+        }
+
+        // Do final cleanups on full code that is now completely added
+        token.checkpoint();
+        finalProcessing(javaCode, className, packageName);
+        return javaCode;
+    }
+
     private void outputClassesToFiles(File apkFile, String className, StringBuilder javaCode,
             ArrayList<String> referencedClassNames) throws IOException {
         // Get the directory of the APK file and create a base directory that includes 'src'
@@ -130,10 +177,8 @@ public class UnpackerGenerator {
         // Create settings.json in the base directory for the new unpacker project
         createSettingsJson(baseDir);
 
-        // Regex pattern to capture content based on "package" declaration
-        Pattern packagePattern = Pattern.compile(
-                "(package\\s+([\\w\\.]+);).*?(?=package\\s+[\\w\\.]+;|$)", Pattern.DOTALL);
-        Matcher packageMatcher = packagePattern.matcher(javaCode.toString());
+        // Capture content based on "package" declaration
+        Matcher packageMatcher = CodePatterns.PACKAGE_BLOCK.matcher(javaCode);
 
         while (packageMatcher.find()) {
             String packageBlock = packageMatcher.group(0);
@@ -148,11 +193,7 @@ public class UnpackerGenerator {
             }
 
             // Extract the class name from the current block of code
-            Pattern classPattern = Pattern.compile(
-                    "\\s+class\\s+(?!Application\\b|Context\\b)(\\w+)\\s+\\{"); // Simple class name
-                                                                                // extraction
-                                                                                // pattern
-            Matcher classMatcher = classPattern.matcher(packageBlock);
+            Matcher classMatcher = CodePatterns.CLASS_NAME.matcher(packageBlock);
             String fileName =
                     "UnknownClass.java"; // Default file name in case no class name is found
             if (classMatcher.find()) {
@@ -193,96 +234,87 @@ public class UnpackerGenerator {
         }
     }
 
+    /*
+     * Every cleanup below is a line rule, so the combined code is walked once instead of once per
+     * cleanup. Reflection removal has to see whole methods and runs on the result.
+     */
     private void finalProcessing(StringBuilder javaCode, String className, String packageName) {
-        commentPackageName(javaCode);
-        makeMethodsStatic(javaCode);
-        makeFieldsStatic(javaCode);
-        removeKeywordThis(javaCode);
-        CodeReplacerUtils util = new CodeReplacerUtils(logger);
-        util.processContextMethods(javaCode, className, packageName);
-        util.processApplicationMethods(javaCode);
-        commentAndroidSpecificImports(javaCode);
-        ReflectionRemover reflectionRemover = new ReflectionRemover(logger, result);
+        CodeReplacerUtils util = new CodeReplacerUtils(logger, names);
+        RewritePipeline pipeline = new RewritePipeline();
+        pipeline.add(commentPackageNameRule())
+                .add((line, lineNumber) -> makeMethodsStatic(line))
+                .add((line, lineNumber) -> makeFieldsStatic(line))
+                .add((line, lineNumber) -> removeKeywordThis(line));
+        util.addContextRules(pipeline, className, packageName);
+        util.addApplicationRules(pipeline);
+        pipeline.add((line, lineNumber) -> commentAndroidSpecificImports(line));
+        pipeline.rewrite(javaCode);
+
+        ReflectionRemover reflectionRemover = new ReflectionRemover(logger);
         reflectionRemover.removeReflection(javaCode);
     }
 
-    private void commentPackageName(StringBuilder javaCode) {
-        // Pattern to match the package name declaration
-        Pattern packagePattern = Pattern.compile("(?m)^package\\s+.*?;");
-        Matcher matcher = packagePattern.matcher(javaCode);
+    // Comments out the first package declaration only
+    private RewritePipeline.Rule commentPackageNameRule() {
+        return new RewritePipeline.Rule() {
+            private boolean done = false;
 
-        // Buffer to hold the modified code
-        StringBuffer modifiedCode = new StringBuffer();
-
-        // Comment out the package name declaration
-        if (matcher.find()) {
-            String packageStatement = matcher.group();
-            String commentedPackageStatement = "// " + packageStatement;
-            matcher.appendReplacement(modifiedCode, commentedPackageStatement);
-        }
-        matcher.appendTail(modifiedCode);
-
-        // Replace the original code with the modified code
-        javaCode.setLength(0);
-        javaCode.append(modifiedCode);
-    }
-
-    private void commentAndroidSpecificImports(StringBuilder javaCode) {
-        // Pattern to match import statements
-        Pattern importPattern = Pattern.compile("(?m)^import\\s+.*?;");
-        Matcher importMatcher = importPattern.matcher(javaCode);
-
-        // Buffer to hold the modified code
-        StringBuffer modifiedCode = new StringBuffer();
-
-        while (importMatcher.find()) {
-            String importStatement = importMatcher.group();
-            // Extract the fully qualified class name from the import statement
-            String className =
-                    importStatement.replaceFirst("import\\s+", "").replaceFirst(";", "").trim();
-
-            // Check if the class name starts with any of the specified prefixes
-            boolean isAndroidImport = false;
-            for (String prefix : androidOnlyImports) {
-                if (className.startsWith(prefix)) {
-                    isAndroidImport = true;
-                    break;
+            @Override
+            public String rewriteLine(String line, int lineNumber) {
+                if (done) {
+                    return line;
                 }
+                Matcher matcher = CodePatterns.PACKAGE_DECLARATION.matcher(line);
+                if (!matcher.find()) {
+                    return line;
+                }
+                done = true;
+                return line.substring(0, matcher.start()) + "// " + matcher.group()
+                        + line.substring(matcher.end());
             }
+        };
+    }
 
-            // If it is an Android-specific import, comment it out
-            if (isAndroidImport) {
-                importStatement = "// " + importStatement;
+    private String commentAndroidSpecificImports(String line) {
+        if (!line.startsWith("import")) {
+            return line;
+        }
+        Matcher importMatcher = CodePatterns.IMPORT_STATEMENT.matcher(line);
+        if (!importMatcher.find()) {
+            return line;
+        }
+        String importStatement = importMatcher.group();
+        // Extract the fully qualified class name from the import statement
+        String className =
+                importStatement.substring("import".length()).replace(";", "").trim();
+
+        // Check if the class name starts with any of the specified prefixes
+        for (String prefix : androidOnlyImports) {
+            if (className.startsWith(prefix)) {
+                // It is an Android-specific import, comment it out
+                return line.substring(0, importMatcher.start()) + "// " + importStatement
+                        + line.substring(importMatcher.end());
             }
-
-            // Append the modified or unmodified import statement to the buffer
-            importMatcher.appendReplacement(modifiedCode, importStatement);
         }
-        importMatcher.appendTail(modifiedCode);
-
-        // Replace the original code with the modified code
-        javaCode.setLength(0);
-        javaCode.append(modifiedCode);
+        return line;
     }
 
     private String processApplicationSubclass(
-            JavaClass applicationClass, String className, JadxDecompiler jadx) {
-        String appClassCode =
-                IdentifierRenamer.renameArgsAndVars(applicationClass, jadx, existingNames)
-                        .toString();
-        appClassCode = appClassCode.replace(applicationClass.getName(), className);
-        appClassCode = appClassCode.replaceAll("extends Application", "");
-        appClassCode = appClassCode.replaceAll("@Override // android.app.Application", "");
-        appClassCode = appClassCode.replaceAll("@Override // android.content.ContextWrapper", "");
-        appClassCode = appClassCode.replaceAll("super\\.attachBaseContext\\(\\w+\\);",
+            String decompiledCode, String applicationClassName, String className) {
+        String appClassCode = IdentifierRenamer.renameArgsAndVars(decompiledCode, names).toString();
+        appClassCode = appClassCode.replace(applicationClassName, className);
+        appClassCode = appClassCode.replace("extends Application", "");
+        appClassCode = appClassCode.replace("@Override // android.app.Application", "");
+        appClassCode = appClassCode.replace("@Override // android.content.ContextWrapper", "");
+        appClassCode = CodePatterns.SUPER_ATTACH_BASE_CONTEXT.matcher(appClassCode).replaceAll(
                 "//super.attachBaseContext(context); // BadUnboxing: Remove superclass reference");
-        appClassCode = appClassCode.replaceAll("super\\.onCreate\\(\\);",
+        appClassCode = appClassCode.replace("super.onCreate();",
                 "//super.onCreate(); // BadUnboxing: Remove superclass reference");
         appClassCode = replaceAttachBaseContextWithMain(appClassCode);
 
         // Extract imports from the application subclass
         StringBuilder imports = new StringBuilder();
-        Matcher importMatcher = Pattern.compile("(?m)^import\\s+.*?;").matcher(appClassCode);
+        Matcher importMatcher = CodePatterns.IMPORT_STATEMENT.matcher(appClassCode);
         while (importMatcher.find()) {
             imports.append(importMatcher.group()).append("\n");
         }
@@ -294,10 +326,8 @@ public class UnpackerGenerator {
     }
 
     private String replaceAttachBaseContextWithMain(String appClassCode) {
-        // Pattern to find the attachBaseContext method signature and extract the parameter name
-        Pattern pattern = Pattern.compile("(public|protected|private|\\s*)\\s*void\\s*"
-                                          + "attachBaseContext\\(Context\\s+(\\w+)\\)");
-        Matcher matcher = pattern.matcher(appClassCode);
+        // Find the attachBaseContext method signature and extract the parameter name
+        Matcher matcher = CodePatterns.ATTACH_BASE_CONTEXT.matcher(appClassCode);
 
         // Variable to store the Context parameter name
         String contextParamName = null;
@@ -323,98 +353,51 @@ public class UnpackerGenerator {
         return appClassCode;
     }
 
-    private void makeFieldsStatic(StringBuilder javaCode) {
-        // Pattern to match field declarations that start with "field_"
-        // This pattern looks for optional access modifiers, optional "final" keyword,
-        // any valid Java type (primitive or object), optional array brackets, and field names
-        // starting with "field_" It supports fields with or without initial access modifiers.
-        Pattern fieldPattern = Pattern.compile(
-                "(?m)^\\s*(public\\s+|protected\\s+|private\\s+)?(static\\s+)?(final\\s+)?([\\w\\["
-                + "\\]\\<\\>]+\\s+)(field_\\w+\\s*)(=\\s*[^;]+)?;");
-
-        Matcher matcher = fieldPattern.matcher(javaCode);
-        StringBuffer modifiedCode = new StringBuffer();
-
-        while (matcher.find()) {
-            String accessModifier =
-                    matcher.group(1) == null ? "" : matcher.group(1); // Capture access modifiers
-            String isStatic = matcher.group(2); // Capture the 'static' keyword if it exists
-            String finalModifier = matcher.group(3) == null
-                    ? ""
-                    : matcher.group(3); // Capture the 'final' keyword if it exists
-            String type = matcher.group(4); // Capture the type
-            String fieldName = matcher.group(5); // Capture the field name
-            String initializer = matcher.group(6) == null
-                    ? ""
-                    : matcher.group(6); // Capture the initializer if present
-
-            // Construct the replacement string
-            String replacement;
-            if (isStatic == null) {
-                // If 'static' keyword is missing, add it
-                replacement = accessModifier + "static " + finalModifier + type + fieldName
-                        + initializer + ";";
-            } else {
-                // If 'static' keyword is already there, keep the declaration as it is
-                replacement = matcher.group(0);
-            }
-
-            // Append the replacement to the buffer
-            matcher.appendReplacement(modifiedCode, replacement);
+    private String makeFieldsStatic(String line) {
+        // Only fields renamed to "field_..." are of interest
+        if (!line.contains("field_")) {
+            return line;
         }
-        matcher.appendTail(modifiedCode);
-
-        // Replace the original code with the modified code
-        javaCode.setLength(0);
-        javaCode.append(modifiedCode);
+        Matcher matcher = CodePatterns.FIELD_DECLARATION.matcher(line);
+        if (!matcher.find() || matcher.group(3) != null) {
+            // Not a field declaration, or 'static' is already there
+            return line;
+        }
+        String indent = matcher.group(1);
+        String accessModifier =
+                matcher.group(2) == null ? "" : matcher.group(2); // Capture access modifiers
+        String finalModifier = matcher.group(4) == null
+                ? ""
+                : matcher.group(4); // Capture the 'final' keyword if it exists
+        String type = matcher.group(5); // Capture the type
+        String fieldName = matcher.group(6); // Capture the field name
+        String initializer = matcher.group(7) == null
+                ? ""
+                : matcher.group(7); // Capture the initializer if present
+
+        // 'static' keyword is missing, add it
+        return indent + accessModifier + "static " + finalModifier + type + fieldName + initializer
+                + ";" + line.substring(matcher.end());
     }
 
-    private void makeMethodsStatic(StringBuilder javaCode) {
-        // Pattern to match lines starting with whitespace followed by public, protected, or
-        // private, followed by a single whitespace, and not followed by "static"
-        Pattern methodPattern =
-                Pattern.compile("(?m)^\\s*(public|protected|private)\\s+(?!static|class)");
-
-        Matcher matcher = methodPattern.matcher(javaCode);
-
-        // Buffer to hold the modified code
-        StringBuffer modifiedCode = new StringBuffer();
-
-        while (matcher.find()) {
-            String methodSignature = matcher.group();
-            // Modify the line to include "static" after the keyword
-            String modifiedMethod =
-                    methodSignature.replaceFirst("(public|protected|private)", "$1 static");
-            matcher.appendReplacement(modifiedCode, modifiedMethod);
+    private String makeMethodsStatic(String line) {
+        Matcher matcher = CodePatterns.NON_STATIC_MEMBER.matcher(line);
+        if (!matcher.find()) {
+            return line;
         }
-        matcher.appendTail(modifiedCode);
-
-        // Replace the original code with the modified code
-        javaCode.setLength(0);
-        javaCode.append(modifiedCode);
+        // Modify the line to include "static" after the access modifier
+        return line.substring(0, matcher.end(1)) + " static" + line.substring(matcher.end(1));
     }
 
-    private void removeKeywordThis(StringBuilder javaCode) {
-        // Pattern to match all occurrences of "this."
-        Pattern thisPattern = Pattern.compile("\\bthis\\.");
-        Matcher matcher = thisPattern.matcher(javaCode);
-        StringBuffer modifiedCode = new StringBuffer();
-
-        // Replace all occurrences with an empty string
-        while (matcher.find()) {
-            matcher.appendReplacement(modifiedCode, "");
+    private String removeKeywordThis(String line) {
+        if (!line.contains("this.")) {
+            return line;
         }
-        matcher.appendTail(modifiedCode);
-
-        // Replace the original code with the modified code
-        javaCode.setLength(0);
-        javaCode.append(modifiedCode);
+        return CodePatterns.THIS_ACCESS.matcher(line).replaceAll("");
     }
 
-    private void insertNewClass(
-            StringBuilder javaCode, JavaClass newCodeClass, JadxDecompiler jadx) {
-        String newClassCode =
-                IdentifierRenamer.renameArgsAndVars(newCodeClass, jadx, existingNames).toString();
+    private void insertNewClass(StringBuilder javaCode, String decompiledCode) {
+        String newClassCode = IdentifierRenamer.renameArgsAndVars(decompiledCode, names).toString();
 
         // Remove the package line and store it
         /*
@@ -427,7 +410,7 @@ public class UnpackerGenerator {
         // TODO keep the package name so we can find it when separating classes
 
         // Process class imports and update the newClassCode by removing imports
-        StringBuilder imports = processClassImports(javaCode, newClassCode);
+        StringBuilder imports = processClassImports(newClassCode);
 
         // TODO removing import moving due to placing files in separate java files
         /*
@@ -446,6 +429,7 @@ public class UnpackerGenerator {
 
         // Append the new class code without the package line and imports
         javaCode.append(newClassCode).append("\n");
+        collectImports(newClassCode);
     }
 
     /*
@@ -454,15 +438,14 @@ public class UnpackerGenerator {
      */
     private String processKeyWordsBasedOnImports(StringBuilder imports, String newClassCode) {
         // Extract each import statement
-        Pattern importPattern = Pattern.compile("import\\s+([\\w\\.]+);");
-        Matcher matcher = importPattern.matcher(imports);
+        Matcher matcher = CodePatterns.IMPORTED_CLASS.matcher(imports);
 
         // For each import statement, check if it is supported and call the corresponding method
         while (matcher.find()) {
             String importClass = matcher.group(1);
             String prefix = importClass.split("\\.")[0];
 
-            CodeReplacerUtils util = new CodeReplacerUtils(logger);
+            CodeReplacerUtils util = new CodeReplacerUtils(logger, names);
 
             if (androidOnlyImports.contains(prefix)) {
                 switch (importClass) {
@@ -500,49 +483,39 @@ public class UnpackerGenerator {
         return newClassCode;
     }
 
-    private StringBuilder processClassImports(StringBuilder javaCode, String newClassCode) {
-        // Extract imports from existing code
-        Set<String> existingImports = new HashSet<>();
-        Matcher importMatcher = Pattern.compile("(?m)^import\\s+.*?;").matcher(javaCode);
-        while (importMatcher.find()) {
-            existingImports.add(importMatcher.group());
-        }
-
+    // Imports of newClassCode that none of the code appended so far has
+    private StringBuilder processClassImports(String newClassCode) {
+        Set<String> newImports = new HashSet<>();
         StringBuilder imports = new StringBuilder();
-        importMatcher = Pattern.compile("(?m)^import\\s+.*?;").matcher(newClassCode);
+        Matcher importMatcher = CodePatterns.IMPORT_STATEMENT.matcher(newClassCode);
         while (importMatcher.find()) {
             String importStatement = importMatcher.group();
-            if (!existingImports.contains(importStatement)) {
+            if (!existingImports.contains(importStatement) && newImports.add(importStatement)) {
                 imports.append(importStatement).append("\n");
-                existingImports.add(importStatement);
             }
         }
 
         return imports;
     }
 
-    private void findReferencedClasses(
-            JavaClass javaClass, Set<JavaClass> referencedClasses, JadxDecompiler jadx) {
-        // Add the current class to the referenced set if not already present
-        if (!referencedClasses.add(javaClass)) {
-            // Class already processed
-            return;
+    // Keeps existingImports in step with the appended code, so it never has to be searched again
+    private void collectImports(String appendedCode) {
+        Matcher importMatcher = CodePatterns.IMPORT_STATEMENT.matcher(appendedCode);
+        while (importMatcher.find()) {
+            existingImports.add(importMatcher.group());
         }
+    }
 
-        String packageName = javaClass.getPackage();
-        String classCode = javaClass.getCode();
-
-        // Iterate through all classes in the decompiler
-        for (JavaClass currentClass : jadx.getClasses()) {
-            if (packageName.equals(currentClass.getPackage()) && !javaClass.equals(currentClass)
-                    && !currentClass.getName().equals("R")) {
-                if (classCode.contains(currentClass.getName())) {
-                    referencedClasses.add(currentClass);
-                    logger.log("Adding class " + currentClass.getName() + " to referenced classes");
-                    findReferencedClasses(currentClass, referencedClasses, jadx);
-                }
+    // The application class and everything it transitively references in its own package, in BFS order
+    private Set<JavaClass> findReferencedClasses(JavaClass applicationClass) {
+        token.checkpoint();
+        Set<JavaClass> referencedClasses = ReferenceGraph.build(classIndex).reachableFrom(applicationClass);
+        for (JavaClass currentClass : referencedClasses) {
+            if (currentClass != applicationClass) {
+                logger.log("Adding class " + currentClass.getName() + " to referenced classes");
             }
         }
+        return referencedClasses;
     }
 
     private boolean isCustomClass(String typeName) {